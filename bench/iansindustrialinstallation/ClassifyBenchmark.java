@@ -0,0 +1,62 @@
+package iansindustrialinstallation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iansindustrialinstallation.IansIndustrialInstallation.Hazard;
+
+// Classifying readings into bands (what GetBoxColor / GetColorLetter used to do cell by cell):
+// a whole grid through the lookup table, and the single-reading path.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifyBenchmark
+{
+	@Param({ "20x20", "200x200", "1000x1000", "4000x4000" })
+	public String size;
+	
+	@Param({ "sparse", "dense" })
+	public String density;
+	
+	private HazardGrid grid;
+	private HazardClassifier classifier;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		grid = SyntheticGrids.grid(size, density);
+		classifier = Hazard.valueOf("SO2").classifier();
+	}
+	
+	@Benchmark
+	public BandGrid classifyGrid()
+	{
+		return classifier.classify(grid);
+	}
+	
+	@Benchmark
+	public int classifyEachCell()
+	{
+		int sum = 0;
+		for (int i = 0; i < grid.width() * grid.height(); i++)
+		{
+			sum += classifier.classify(grid.get(i));
+		}
+		return sum;
+	}
+}
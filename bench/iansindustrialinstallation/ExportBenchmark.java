@@ -0,0 +1,94 @@
+package iansindustrialinstallation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iansindustrialinstallation.IansIndustrialInstallation.Hazard;
+
+// Writing the .RAF, .DAT and .RPT exports (the RPT run-length generation happens in the same pass):
+// a full export, a re-export where a few rows changed, and one where nothing changed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark
+{
+	@Param({ "20x20", "200x200", "1000x1000", "4000x4000" })
+	public String size;
+	
+	@Param({ "sparse", "dense" })
+	public String density;
+	
+	private BandGrid bands;
+	private BandGrid bandsFewRowsChanged;
+	private File dir;
+	private boolean flip;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		HazardGrid grid = SyntheticGrids.grid(size, density);
+		bands = Hazard.valueOf("SO2").classifier().classify(grid);
+		
+		// Same grid with one cell changed in each of (up to) 10 rows
+		byte[] changed = bands.bands().clone();
+		for (int i = 0; i < 10 && i < bands.height(); i++)
+		{
+			int index = (i * bands.height() / 10) * bands.width();
+			changed[index] = (byte) ((changed[index] + 1) % HazardClassifier.BAND_COUNT);
+		}
+		bandsFewRowsChanged = new BandGrid(bands.width(), bands.height(), changed);
+		
+		dir = Files.createTempDirectory("bench_export_").toFile();
+		GridExporter.export(bands, "SO2", dir, "bench");
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		for (File f : dir.listFiles())
+		{
+			f.delete();
+		}
+		dir.delete();
+	}
+	
+	@Benchmark
+	public void exportFull() throws IOException
+	{
+		GridExporter.export(bands, "SO2", dir, "bench");
+	}
+	
+	// Alternates between the two grids, so every call rewrites the same 10 rows
+	@Benchmark
+	public int exportFewRowsChanged() throws IOException
+	{
+		flip = !flip;
+		return GridExporter.exportChanged(flip ? bandsFewRowsChanged : bands, "SO2", dir, "bench");
+	}
+	
+	@Benchmark
+	public int exportUnchanged() throws IOException
+	{
+		flip = false;
+		return GridExporter.exportChanged(bands, "SO2", dir, "bench");
+	}
+}
@@ -0,0 +1,84 @@
+package iansindustrialinstallation;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Loading a hazard .csv: the single-pass parser on its own (from memory),
+// and reading a file through the buffered stream and memory-mapped paths.
+// The parser works out the grid size as it reads, which is what GetXYFromFile used to do separately.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark
+{
+	@Param({ "20x20", "200x200", "1000x1000", "4000x4000" })
+	public String size;
+	
+	@Param({ "sparse", "dense" })
+	public String density;
+	
+	private byte[] csv;
+	private File file;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		HazardGrid grid = SyntheticGrids.grid(size, density);
+		csv = SyntheticGrids.csv(grid);
+		
+		file = File.createTempFile("bench_" + size + "_" + density + "_", ".csv");
+		try (OutputStream out = new FileOutputStream(file))
+		{
+			out.write(csv);
+		}
+		
+		// read(String) then always takes the buffered stream path; readMapped() is called directly
+		HazardCsvReader.setMappedThreshold(Long.MAX_VALUE);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		Files.deleteIfExists(file.toPath());
+	}
+	
+	@Benchmark
+	public HazardGrid parseFromMemory() throws IOException
+	{
+		return HazardCsvReader.read(new ByteArrayInputStream(csv));
+	}
+	
+	@Benchmark
+	public HazardGrid readStreamed() throws IOException
+	{
+		return HazardCsvReader.read(file.getPath());
+	}
+	
+	@Benchmark
+	public HazardGrid readMapped() throws IOException
+	{
+		return HazardCsvReader.readMapped(file.toPath());
+	}
+}
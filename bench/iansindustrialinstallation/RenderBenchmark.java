@@ -0,0 +1,83 @@
+package iansindustrialinstallation;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iansindustrialinstallation.IansIndustrialInstallation.Hazard;
+
+// Painting the heatmap into an off-screen image the size of a typical window,
+// with the whole grid fitted in view. Runs headless.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark
+{
+	private static final int VIEW_WIDTH = 1200;
+	private static final int VIEW_HEIGHT = 800;
+	
+	@Param({ "20x20", "200x200", "1000x1000", "4000x4000" })
+	public String size;
+	
+	@Param({ "sparse", "dense" })
+	public String density;
+	
+	private BandGrid bands;
+	private HeatmapCanvas canvas;
+	private BufferedImage screen;
+	private Graphics graphics;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		HazardGrid grid = SyntheticGrids.grid(size, density);
+		bands = Hazard.valueOf("SO2").classifier().classify(grid);
+		
+		canvas = new HeatmapCanvas(grid.width(), grid.height(), IansIndustrialInstallation.BOX_COLORS);
+		canvas.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+		
+		screen = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		graphics = screen.getGraphics();
+		graphics.setClip(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		graphics.dispose();
+	}
+	
+	// New data arriving: cells replaced and the view painted (rebuilds the coarser levels)
+	@Benchmark
+	public BufferedImage setCellsAndPaint()
+	{
+		canvas.setCells(bands);
+		canvas.paint(graphics);
+		return screen;
+	}
+	
+	// Repainting the same data (pan, zoom, expose)
+	@Benchmark
+	public BufferedImage repaint()
+	{
+		canvas.paint(graphics);
+		return screen;
+	}
+}
@@ -0,0 +1,84 @@
+package iansindustrialinstallation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Generates hazard grids and their .csv text for the benchmarks.
+// "sparse" grids are 95% zero readings with the rest spread over all bands, like real sweeps;
+// "dense" grids have a non-zero reading in every cell.
+final class SyntheticGrids
+{
+	private SyntheticGrids()
+	{
+	}
+	
+	// Parse a "WIDTHxHEIGHT" benchmark parameter
+	static int[] size(String size)
+	{
+		String[] parts = size.split("x");
+		return new int[] { Integer.parseInt(parts[0]), Integer.parseInt(parts[1]) };
+	}
+	
+	static HazardGrid grid(String size, String density)
+	{
+		int[] wh = size(size);
+		return grid(wh[0], wh[1], density.equals("dense"), 42);
+	}
+	
+	static HazardGrid grid(int width, int height, boolean dense, long seed)
+	{
+		Random random = new Random(seed);
+		int[] values = new int[width * height];
+		
+		for (int i = 0; i < values.length; i++)
+		{
+			if (dense || random.nextInt(100) < 5)
+			{
+				// 1 to 40 covers every band of every hazard
+				values[i] = 1 + random.nextInt(40);
+			}
+		}
+		
+		return new HazardGrid(new GridHeader("Benchmark Site", "20/10/2027", "3:00pm"), width, height, values);
+	}
+	
+	// The grid in .csv form
+	static byte[] csv(HazardGrid grid)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(grid.width() * grid.height() * 3 + 64);
+		try
+		{
+			writeCsv(grid, out);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+	
+	static void writeCsv(HazardGrid grid, OutputStream out) throws IOException
+	{
+		StringBuilder line = new StringBuilder();
+		line.append(grid.header().address()).append('\n');
+		line.append(grid.header().date()).append('\n');
+		line.append(grid.header().time()).append('\n');
+		out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+		
+		for (int y = 0; y < grid.height(); y++)
+		{
+			line.setLength(0);
+			for (int x = 0; x < grid.width(); x++)
+			{
+				if (x > 0)
+					line.append(',');
+				line.append(grid.get(x, y));
+			}
+			line.append('\n');
+			out.write(line.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package iansindustrialinstallation;
+
+// Classified version of a HazardGrid: one band per cell, in the same row-major order.
+// Bands are the HazardClassifier constants (WHITE, GREEN, YELLOW, RED),
+// which go up with severity. Built once per load, then shared by rendering and every exporter.
+//
+// There are only four bands, so each one is packed into 2 bits, four cells to a byte
+// (a quarter of the size of a byte per cell). Every row starts on a new byte, so rows can be
+// read (and, while the grid is being built, written) on their own.
+public final class BandGrid
+{
+	private static final int BITS = 2;
+	private static final int CELLS_PER_BYTE = 8 / BITS;
+	private static final int MASK = (1 << BITS) - 1;
+	
+	private final int width;
+	private final int height;
+	private final int rowBytes;
+	private final byte[] packed;
+	
+	public BandGrid(int width, int height, byte[] bands)
+	{
+		this(width, height);
+		
+		if (bands.length != width * height)
+		{
+			throw new IllegalArgumentException("Grid of " + width + "x" + height + " cannot hold " + bands.length + " bands");
+		}
+		for (int i = 0; i < bands.length; i++)
+		{
+			if (bands[i] < 0 || bands[i] > MASK)
+				throw new IllegalArgumentException("Band " + bands[i] + " at " + (i % width) + "," + (i / width) + " does not fit in " + BITS + " bits");
+		}
+		
+		for (int y = 0; y < height; y++)
+		{
+			setRow(y, bands, y * width);
+		}
+	}
+	
+	// Grid of WHITE cells, to be filled in row by row with setRow
+	BandGrid(int width, int height)
+	{
+		if (width < 0 || height < 0)
+		{
+			throw new IllegalArgumentException("Grid of " + width + "x" + height + " cannot hold any bands");
+		}
+		
+		this.width = width;
+		this.height = height;
+		this.rowBytes = (width + CELLS_PER_BYTE - 1) / CELLS_PER_BYTE;
+		this.packed = new byte[rowBytes * height];
+	}
+	
+	// some getters for the grid contents
+	public int width() { return width; }
+	public int height() { return height; }
+	
+	// Rough memory used by the bands
+	public long sizeInBytes() { return packed.length; }
+	
+	// Band at the given x,y coordinate
+	public byte get(int x, int y)
+	{
+		return (byte) ((packed[y * rowBytes + x / CELLS_PER_BYTE] >> ((x % CELLS_PER_BYTE) * BITS)) & MASK);
+	}
+	
+	// Band at the given flat index
+	public byte get(int index)
+	{
+		return get(index % width, index / width);
+	}
+	
+	// Copy the bands of row y into the given array, starting at offset
+	public void row(int y, byte[] into, int offset)
+	{
+		int start = y * rowBytes;
+		int x = 0;
+		
+		// Four cells at a time from each whole byte
+		for (int b = start; x + CELLS_PER_BYTE <= width; b++, x += CELLS_PER_BYTE)
+		{
+			int four = packed[b];
+			into[offset + x] = (byte) (four & MASK);
+			into[offset + x + 1] = (byte) ((four >> 2) & MASK);
+			into[offset + x + 2] = (byte) ((four >> 4) & MASK);
+			into[offset + x + 3] = (byte) ((four >> 6) & MASK);
+		}
+		for (; x < width; x++)
+		{
+			into[offset + x] = (byte) ((packed[start + x / CELLS_PER_BYTE] >> ((x % CELLS_PER_BYTE) * BITS)) & MASK);
+		}
+	}
+	
+	// Whether row y holds the same bands as row y of another grid of the same width
+	public boolean sameRow(int y, BandGrid other)
+	{
+		int start = y * rowBytes;
+		for (int b = start; b < start + rowBytes; b++)
+		{
+			if (packed[b] != other.packed[b])
+				return false;
+		}
+		return true;
+	}
+	
+	// Set the bands of row y from the given array, starting at offset (each 0 to 3).
+	// Only while the grid is being built, before anything else can see it
+	void setRow(int y, byte[] from, int offset)
+	{
+		int start = y * rowBytes;
+		for (int b = 0; b < rowBytes; b++)
+		{
+			int four = 0;
+			for (int c = 0, x = b * CELLS_PER_BYTE; c < CELLS_PER_BYTE && x < width; c++, x++)
+			{
+				four |= from[offset + x] << (c * BITS);
+			}
+			packed[start + b] = (byte) four;
+		}
+	}
+	
+	// Every band unpacked into a new array, for bulk loops inside the package
+	byte[] bands()
+	{
+		byte[] bands = new byte[width * height];
+		for (int y = 0; y < height; y++)
+		{
+			row(y, bands, y * width);
+		}
+		return bands;
+	}
+}
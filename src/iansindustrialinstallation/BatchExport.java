@@ -0,0 +1,369 @@
+package iansindustrialinstallation;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import iansindustrialinstallation.IansIndustrialInstallation.Hazard;
+
+// Headless batch mode: turns every sweep .csv in a directory into .RAF, .DAT, .RPT, .SUM and .ZON exports
+// with no window, for use on servers. Started as its own main class, which runs with java.awt.headless set:
+//
+//   java -cp iansindustrialinstallation.jar iansindustrialinstallation.BatchExport [-in dir] [-out dir] [-hazards SO2,CO,...] [-threads n] [-v]
+//
+// or from the normal main class with -batch (no window is opened, but AWT is loaded first so it is not headless):
+//
+//   java -jar iansindustrialinstallation.jar -batch [options as above]
+//
+// Sweep files are named Ians_<sweep>_<hazard>.csv, and each one is exported as
+// <out>/Ians_<sweep>_<hazard>.RAF/.DAT/.RPT/.SUM/.ZON. Files are processed in parallel, one per thread.
+//
+// Past sweeps kept by the program in its history folder (see SweepHistory) can be used instead of the .csv files:
+//
+//   -at "20/10/2027 3:00pm"   export each hazard's grid as it was at that time, as <out>/<hazard>_<yyyyMMdd-HHmm>.*
+//   -cell x,y                 print every recorded reading of that cell (x and y start at 1, like the .DAT),
+//                             one "hazard,date time,reading" line each, up to the -at time if given
+//   -history dir              history folder to use (history by default)
+//
+// Headless-safe: started as its own main class, no AWT class is loaded on the way through
+// (Hazard is only a nested class of the window, and loading it does not load the window),
+// so it runs on servers with no display.
+public final class BatchExport
+{
+	public static final String FLAG = "-batch";
+	
+	private File inputDir = new File(".");
+	private File outputDir = new File("export");
+	private Set<Hazard> hazards = new LinkedHashSet<Hazard>(Arrays.asList(Hazard.values()));
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
+	// Past sweeps to use instead of the .csv files (-at and -cell)
+	private File historyDir = new File("history");
+	private long at = -1;
+	private int cellX = -1;
+	private int cellY = -1;
+	
+	private BatchExport()
+	{
+	}
+	
+	// Entry point for headless runs. Nothing has touched AWT yet here, so setting headless still counts
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		Metrics.startFromProperties();
+		System.exit(run(args));
+	}
+	
+	// Is batch mode asked for in these program arguments?
+	public static boolean isRequested(String[] args)
+	{
+		return Arrays.asList(args).contains(FLAG);
+	}
+	
+	// Run batch mode with the given program arguments, returning the exit code
+	// (0 all exported, 1 some files failed, 2 bad arguments)
+	public static int run(String[] args)
+	{
+		BatchExport batch = new BatchExport();
+		
+		try
+		{
+			batch.parseArgs(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println("ERROR: " + e.getMessage());
+			System.err.println("Usage: " + FLAG + " [-in dir] [-out dir] [-hazards " + Arrays.toString(Hazard.values()).replaceAll("[\\[\\] ]", "") + "] [-threads n] [-v]"
+					+ " [-history dir] [-at \"d/m/yyyy h:mmpm\"] [-cell x,y]");
+			return 2;
+		}
+		
+		try
+		{
+			if (batch.cellX >= 0)
+				return batch.printCellHistory();
+			if (batch.at >= 0)
+				return batch.exportHistory();
+			return batch.exportAll();
+		}
+		finally
+		{
+			DebugLog.close();
+		}
+	}
+	
+	private void parseArgs(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			switch (args[i])
+			{
+			case FLAG:
+				break;
+				
+			case "-in":
+				inputDir = new File(value(args, ++i, "-in"));
+				break;
+				
+			case "-out":
+				outputDir = new File(value(args, ++i, "-out"));
+				break;
+				
+			case "-hazards":
+				hazards = new LinkedHashSet<Hazard>();
+				for (String name : value(args, ++i, "-hazards").split(","))
+				{
+					hazards.add(Hazard.valueOf(name.trim()));
+				}
+				break;
+				
+			case "-threads":
+				try
+				{
+					threads = Integer.parseInt(value(args, ++i, "-threads"));
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IllegalArgumentException("-threads needs a number");
+				}
+				if (threads < 1)
+					throw new IllegalArgumentException("-threads must be at least 1");
+				break;
+				
+			case "-v":
+				DebugLog.setLevel(DebugLog.Level.DEBUG);
+				break;
+				
+			case "-history":
+				historyDir = new File(value(args, ++i, "-history"));
+				break;
+				
+			case "-at":
+				at = timeOf(value(args, ++i, "-at"));
+				break;
+				
+			case "-cell":
+				String[] xy = value(args, ++i, "-cell").split(",");
+				try
+				{
+					cellX = Integer.parseInt(xy[0].trim()) - 1;
+					cellY = xy.length == 2 ? Integer.parseInt(xy[1].trim()) - 1 : -1;
+				}
+				catch (NumberFormatException e)
+				{
+					cellY = -1;
+				}
+				if (cellX < 0 || cellY < 0)
+					throw new IllegalArgumentException("-cell needs x,y starting at 1");
+				break;
+				
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		
+		if (!inputDir.isDirectory())
+			throw new IllegalArgumentException("Input directory " + inputDir + " not found");
+	}
+	
+	// Timestamp of a sweep date and time written like in the .csv files, e.g. "20/10/2027 3:00pm"
+	private static long timeOf(String dateTime)
+	{
+		String[] parts = dateTime.trim().split("\\s+");
+		long time = parts.length == 2 ? new GridHeader("", parts[0], parts[1]).timestamp() : -1;
+		if (time < 0)
+			throw new IllegalArgumentException("-at needs a date and time like \"20/10/2027 3:00pm\"");
+		return time;
+	}
+	
+	private static String value(String[] args, int i, String option)
+	{
+		if (i >= args.length)
+			throw new IllegalArgumentException(option + " needs a value");
+		return args[i];
+	}
+	
+	// Hazard for a name as used in file names (not case sensitive), or null if none
+	private int exportAll()
+	{
+		// Find the sweep files of the wanted hazards
+		final File[] files = inputDir.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				Hazard hazard = HazardGridLoader.hazardOfFile(name);
+				return hazard != null && hazards.contains(hazard);
+			}
+		});
+		
+		if (files == null || files.length == 0)
+		{
+			DebugLog.info("No sweep files for " + hazards + " found in " + inputDir);
+			return 0;
+		}
+		Arrays.sort(files);
+		
+		if (!outputDir.isDirectory() && !outputDir.mkdirs())
+		{
+			DebugLog.error("ERROR: Unable to create directory " + outputDir);
+			return 1;
+		}
+		
+		DebugLog.info("Exporting " + files.length + " sweep files from " + inputDir + " to " + outputDir + " on " + threads + " threads...");
+		long start = System.nanoTime();
+		
+		HazardGridLoader loader = new HazardGridLoader(threads);
+		List<Future<Void>> exports = new ArrayList<Future<Void>>();
+		
+		for (final File file : files)
+		{
+			exports.add(loader.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					exportFile(file);
+					return null;
+				}
+			}));
+		}
+		
+		// Wait for them all, counting failures
+		int failed = 0;
+		for (int i = 0; i < exports.size(); i++)
+		{
+			try
+			{
+				exports.get(i).get();
+			}
+			catch (ExecutionException e)
+			{
+				failed++;
+				DebugLog.error("ERROR!\t" + files[i].getName() + ": " + e.getCause().getMessage());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				failed += exports.size() - i;
+				break;
+			}
+		}
+		loader.shutdown();
+		
+		long millis = (System.nanoTime() - start) / 1000000;
+		DebugLog.info("Exported " + (files.length - failed) + " of " + files.length + " sweep files in " + millis + "ms" + (failed > 0 ? ", " + failed + " failed" : ""));
+		DebugLog.debug(() -> "Metrics:" + System.lineSeparator() + Metrics.report());
+		
+		return failed > 0 ? 1 : 0;
+	}
+	
+	// Load, classify and export one sweep file
+	private void exportFile(File file) throws Exception
+	{
+		String name = file.getName();
+		Hazard hazard = HazardGridLoader.hazardOfFile(name);
+		String baseName = HazardGridLoader.exportNameFor(name);
+		
+		HazardGrid grid = HazardCsvReader.read(file.getPath());
+		exportGrid(hazard, grid, baseName);
+	}
+	
+	// Export each wanted hazard's grid as it was at the -at time, from its history
+	private int exportHistory()
+	{
+		if (!outputDir.isDirectory() && !outputDir.mkdirs())
+		{
+			DebugLog.error("ERROR: Unable to create directory " + outputDir);
+			return 1;
+		}
+		
+		String suffix = new SimpleDateFormat("yyyyMMdd-HHmm").format(new Date(at));
+		int failed = 0;
+		for (Hazard hazard : hazards)
+		{
+			try (SweepHistory history = openHistory(hazard))
+			{
+				if (history == null)
+					continue;
+				
+				HazardGrid grid = history.gridAt(at);
+				if (grid == null)
+				{
+					DebugLog.info("No " + hazard + " sweep recorded at or before " + new Date(at));
+					continue;
+				}
+				
+				exportGrid(hazard, grid, hazard + "_" + suffix);
+			}
+			catch (Exception e)
+			{
+				failed++;
+				DebugLog.error("ERROR!\t" + hazard + ": " + e.getMessage());
+			}
+		}
+		return failed > 0 ? 1 : 0;
+	}
+	
+	// Print every recorded reading of the -cell cell of each wanted hazard (up to the -at time, if given)
+	private int printCellHistory()
+	{
+		DateFormat format = new SimpleDateFormat("d/M/yyyy h:mma", Locale.ENGLISH);
+		int failed = 0;
+		for (Hazard hazard : hazards)
+		{
+			try (SweepHistory history = openHistory(hazard))
+			{
+				if (history == null)
+					continue;
+				
+				SweepHistory.CellSeries series = history.cellHistory(cellX, cellY, 0, at >= 0 ? at : Long.MAX_VALUE);
+				for (int i = 0; i < series.size(); i++)
+				{
+					System.out.println(hazard + "," + format.format(new Date(series.time(i))).toLowerCase() + "," + series.value(i));
+				}
+			}
+			catch (Exception e)
+			{
+				failed++;
+				DebugLog.error("ERROR!\t" + hazard + ": " + e.getMessage());
+			}
+		}
+		return failed > 0 ? 1 : 0;
+	}
+	
+	// History of a hazard, or null if none has been recorded (so none is made by looking)
+	private SweepHistory openHistory(Hazard hazard) throws IOException
+	{
+		if (!new File(historyDir, hazard + ".hist").isFile())
+		{
+			DebugLog.info("No " + hazard + " history in " + historyDir);
+			return null;
+		}
+		return new SweepHistory(historyDir, hazard.toString());
+	}
+	
+	// Classify and export one grid
+	private void exportGrid(Hazard hazard, HazardGrid grid, String baseName) throws Exception
+	{
+		BandGrid bands = hazard.classifier().classify(grid);
+		int rows = GridExporter.exportChanged(bands, hazard.toString(), outputDir, baseName);
+		GridExporter.exportSummary(hazard.statistics(grid), hazard.toString(), outputDir, baseName);
+		GridExporter.exportZones(DangerZones.find(bands, grid, HazardClassifier.YELLOW), hazard.toString(), outputDir, baseName);
+		
+		DebugLog.debug(() -> "Exported " + baseName + " (" + grid.width() + "x" + grid.height() + ", " + rows + " rows rewritten)");
+	}
+}
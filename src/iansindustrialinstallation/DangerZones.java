@@ -0,0 +1,263 @@
+package iansindustrialinstallation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Finds danger zones: areas of touching cells (left, right, up or down) that are all
+// at or above a band, normally YELLOW, so yellow and red cells side by side make one zone.
+// Each zone gets an id (in the order its first cell appears, row by row), its size,
+// bounding box, the highest reading in it and where that is, and its worst band.
+//
+// Connected-component labelling with union-find, in parallel over stripes of rows:
+//   1. each stripe joins up the cells inside it, on its own thread
+//   2. the cells on either side of each stripe boundary are joined
+//   3. each stripe points every cell straight at the root of its zone, on its own thread
+//   4. one pass numbers the zones and adds up their sizes, boxes and peaks
+// Roots are always the lowest cell index in their zone, so step 4 meets them first.
+// https://en.wikipedia.org/wiki/Connected-component_labeling
+public final class DangerZones
+{
+	// Stripes are not made smaller than this many cells
+	private static final int MIN_STRIPE_CELLS = 16 * 1024;
+	
+	// One danger zone. Coordinates are 0-based cell positions
+	public static final class Zone
+	{
+		private final int id;
+		private int size = 0;
+		private int minX, minY, maxX, maxY;
+		private int peak = Integer.MIN_VALUE;
+		private int peakX, peakY;
+		private byte worstBand = 0;
+		
+		Zone(int id, int x, int y)
+		{
+			this.id = id;
+			minX = maxX = x;
+			minY = maxY = y;
+		}
+		
+		private void add(int x, int y, int reading, byte band)
+		{
+			size++;
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			maxY = y;	// cells are added row by row
+			if (reading > peak)
+			{
+				peak = reading;
+				peakX = x;
+				peakY = y;
+			}
+			if (band > worstBand)
+				worstBand = band;
+		}
+		
+		// some getters for the zone contents
+		public int id() { return id; }
+		public int size() { return size; }
+		public int minX() { return minX; }
+		public int minY() { return minY; }
+		public int maxX() { return maxX; }
+		public int maxY() { return maxY; }
+		public int peak() { return peak; }
+		public int peakX() { return peakX; }
+		public int peakY() { return peakY; }
+		public byte worstBand() { return worstBand; }
+	}
+	
+	private final int width;
+	private final int height;
+	private final int[] labels;	// zone id of each cell, -1 if not in a zone
+	private final List<Zone> zones;
+	
+	private DangerZones(int width, int height, int[] labels, List<Zone> zones)
+	{
+		this.width = width;
+		this.height = height;
+		this.labels = labels;
+		this.zones = zones;
+	}
+	
+	// some getters for the zones
+	public int width() { return width; }
+	public int height() { return height; }
+	public List<Zone> zones() { return zones; }
+	
+	// Zone id of the cell at x,y, or -1 if it is not in a danger zone
+	public int zoneAt(int x, int y)
+	{
+		return labels[y * width + x];
+	}
+	
+	// Find the zones of cells at or above minBand, with readings for the peaks
+	public static DangerZones find(BandGrid bands, HazardGrid readings, byte minBand)
+	{
+		int width = bands.width();
+		int height = bands.height();
+		byte[] cells = bands.bands();
+		int[] parent = new int[cells.length];
+		
+		if (cells.length == 0)
+			return new DangerZones(width, height, parent, Collections.<Zone>emptyList());
+		
+		// Split the rows into one stripe or so per core, as long as stripes stay a decent size
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int maxStripes = (int) Math.max(1, (long) cells.length / MIN_STRIPE_CELLS);
+		int stripes = Math.max(1, Math.min(height, Math.min(pool.getParallelism() * 2, maxStripes)));
+		int[] stripeStart = new int[stripes + 1];
+		for (int s = 0; s <= stripes; s++)
+		{
+			stripeStart[s] = (int) ((long) height * s / stripes);
+		}
+		
+		// 1. Join up the cells within each stripe
+		pool.invoke(new StripeTask(cells, parent, width, minBand, stripeStart, 0, stripes, false));
+		
+		// 2. Join the cells on each side of the stripe boundaries
+		for (int s = 1; s < stripes; s++)
+		{
+			int row = stripeStart[s] * width;
+			for (int x = 0; x < width; x++)
+			{
+				if (cells[row + x] >= minBand && cells[row - width + x] >= minBand)
+				{
+					union(parent, row + x, row - width + x);
+				}
+			}
+		}
+		
+		// 3. Point every cell at its root
+		pool.invoke(new StripeTask(cells, parent, width, minBand, stripeStart, 0, stripes, true));
+		
+		// 4. Number the zones in row-major order, turning the roots into zone ids as we go.
+		// A cell's root has a lower index, so it has already been given its id
+		List<Zone> zones = new ArrayList<Zone>();
+		for (int i = 0; i < parent.length; i++)
+		{
+			int root = parent[i];
+			if (root < 0)
+				continue;
+			
+			int x = i % width;
+			int y = i / width;
+			int id;
+			if (root == i)
+			{
+				id = zones.size();
+				zones.add(new Zone(id, x, y));
+			}
+			else
+			{
+				id = parent[root];
+			}
+			parent[i] = id;
+			zones.get(id).add(x, y, readings.get(i), cells[i]);
+		}
+		
+		return new DangerZones(width, height, parent, zones);
+	}
+	
+	// Root of a cell's zone, halving the path to it on the way
+	private static int find(int[] parent, int i)
+	{
+		while (parent[i] != i)
+		{
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+	
+	// Root of a cell's zone without changing anything (safe while other stripes are working)
+	private static int root(int[] parent, int i)
+	{
+		while (parent[i] != i)
+		{
+			i = parent[i];
+		}
+		return i;
+	}
+	
+	// Join the zones of two cells, keeping the lower root
+	private static void union(int[] parent, int a, int b)
+	{
+		int ra = find(parent, a);
+		int rb = find(parent, b);
+		if (ra < rb)
+			parent[rb] = ra;
+		else if (rb < ra)
+			parent[ra] = rb;
+	}
+	
+	// Works on a range of stripes, splitting it between threads.
+	// Each stripe only ever writes to its own cells
+	private static final class StripeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final byte[] cells;
+		private final int[] parent;
+		private final int width;
+		private final byte minBand;
+		private final int[] stripeStart;
+		private final int fromStripe;
+		private final int toStripe;
+		private final boolean flatten;	// step 3 instead of step 1
+		
+		StripeTask(byte[] cells, int[] parent, int width, byte minBand, int[] stripeStart, int fromStripe, int toStripe, boolean flatten)
+		{
+			this.cells = cells;
+			this.parent = parent;
+			this.width = width;
+			this.minBand = minBand;
+			this.stripeStart = stripeStart;
+			this.fromStripe = fromStripe;
+			this.toStripe = toStripe;
+			this.flatten = flatten;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (toStripe - fromStripe > 1)
+			{
+				int middle = (fromStripe + toStripe) >>> 1;
+				invokeAll(new StripeTask(cells, parent, width, minBand, stripeStart, fromStripe, middle, flatten),
+						new StripeTask(cells, parent, width, minBand, stripeStart, middle, toStripe, flatten));
+				return;
+			}
+			
+			int start = stripeStart[fromStripe] * width;
+			int end = stripeStart[toStripe] * width;
+			
+			if (flatten)
+			{
+				for (int i = start; i < end; i++)
+				{
+					if (parent[i] >= 0)
+						parent[i] = root(parent, i);
+				}
+				return;
+			}
+			
+			for (int i = start; i < end; i++)
+			{
+				if (cells[i] < minBand)
+				{
+					parent[i] = -1;
+					continue;
+				}
+				
+				parent[i] = i;
+				if (i % width > 0 && cells[i - 1] >= minBand)
+					union(parent, i, i - 1);
+				if (i - width >= start && cells[i - width] >= minBand)
+					union(parent, i, i - width);
+			}
+		}
+	}
+}
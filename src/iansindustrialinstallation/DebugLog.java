@@ -0,0 +1,296 @@
+package iansindustrialinstallation;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Asynchronous debug logger.
+// Callers only drop the message into a lock-free ring buffer; a background thread
+// formats the lines (same "[timestamp]:\tmessage" layout as before), prints them to the
+// console, and appends them in batches to a log file that stays open.
+// Messages above the current level are skipped, and the Supplier versions
+// do not even build the message then.
+public final class DebugLog
+{
+	public enum Level { ERROR, WARN, INFO, DEBUG, TRACE }
+	
+	// Ring buffer size (a power of two). If the writer falls this far behind, messages are dropped and counted
+	private static final int CAPACITY = 8192;
+	private static final int MASK = CAPACITY - 1;
+	
+	// How long the writer sleeps when there is nothing to write
+	private static final long IDLE_NANOS = 10000000L;
+	
+	// Ring buffer slots. sequences[i] says whose turn slot i is:
+	// equal to the write position when free, write position + 1 once filled
+	private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+	private static final long[] times = new long[CAPACITY];
+	private static final Level[] levels = new Level[CAPACITY];
+	private static final String[] messages = new String[CAPACITY];
+	
+	private static final AtomicLong tail = new AtomicLong();	// next position to write
+	private static volatile long head = 0;						// next position for the writer to read
+	private static final AtomicLong dropped = new AtomicLong();
+	
+	private static volatile Level level = Level.INFO;
+	private static volatile FileChannel file = null;
+	private static volatile boolean writerIdle = false;
+	
+	private static final PrintStream console = System.out;
+	private static final Charset charset = Charset.defaultCharset();
+	private static final String lineSeparator = System.lineSeparator();
+	
+	private static final Thread writer;
+	
+	static
+	{
+		for (int i = 0; i < CAPACITY; i++)
+		{
+			sequences.set(i, i);
+		}
+		
+		writer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writeLoop();
+			}
+		}, "debug-log-writer");
+		writer.setDaemon(true);
+		writer.start();
+		
+		// Write out whatever is left when the program ends
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				close();
+			}
+		}, "debug-log-shutdown"));
+	}
+	
+	private DebugLog()
+	{
+	}
+	
+	public static Level getLevel()
+	{
+		return level;
+	}
+	
+	public static void setLevel(Level newLevel)
+	{
+		level = newLevel;
+	}
+	
+	public static boolean isEnabled(Level messageLevel)
+	{
+		return messageLevel.ordinal() <= level.ordinal();
+	}
+	
+	// Start appending to the given log file (or replace it if append is false)
+	public static synchronized void openFile(String path, boolean append) throws IOException
+	{
+		flush();
+		closeFile();
+		
+		file = append
+				? FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+				: FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+	
+	public static void error(String message) { log(Level.ERROR, message); }
+	public static void warn(String message) { log(Level.WARN, message); }
+	public static void info(String message) { log(Level.INFO, message); }
+	public static void debug(String message) { log(Level.DEBUG, message); }
+	
+	public static void debug(Supplier<String> message) { log(Level.DEBUG, message); }
+	public static void trace(Supplier<String> message) { log(Level.TRACE, message); }
+	
+	// Log a message whose text is only built if the level is enabled
+	public static void log(Level messageLevel, Supplier<String> message)
+	{
+		if (isEnabled(messageLevel))
+		{
+			enqueue(messageLevel, message.get());
+		}
+	}
+	
+	public static void log(Level messageLevel, String message)
+	{
+		if (isEnabled(messageLevel))
+		{
+			enqueue(messageLevel, message);
+		}
+	}
+	
+	// Wait (briefly) until everything logged so far has been written
+	public static void flush()
+	{
+		long target = tail.get();
+		long deadline = System.nanoTime() + 2000000000L;
+		
+		while (head < target && writer.isAlive() && System.nanoTime() < deadline)
+		{
+			LockSupport.unpark(writer);
+			Thread.yield();
+		}
+	}
+	
+	// Flush and close the log file (console logging carries on)
+	public static synchronized void close()
+	{
+		flush();
+		closeFile();
+	}
+	
+	// Claim a slot and fill it in. Never blocks: if the ring is full the message is dropped
+	private static void enqueue(Level messageLevel, String message)
+	{
+		long time = System.currentTimeMillis();
+		
+		while (true)
+		{
+			long pos = tail.get();
+			int slot = (int) (pos & MASK);
+			long sequence = sequences.get(slot);
+			
+			if (sequence == pos)
+			{
+				// Slot is free for this position, try to claim it
+				if (tail.compareAndSet(pos, pos + 1))
+				{
+					times[slot] = time;
+					levels[slot] = messageLevel;
+					messages[slot] = message;
+					sequences.set(slot, pos + 1);	// publish
+					
+					if (writerIdle)
+					{
+						LockSupport.unpark(writer);
+					}
+					return;
+				}
+			}
+			else if (sequence < pos)
+			{
+				// Writer has not freed this slot yet: the ring is full
+				dropped.incrementAndGet();
+				return;
+			}
+			// else another thread claimed this position first, try again
+		}
+	}
+	
+	// Writer thread: take every filled slot in order, and write them as one batch
+	private static void writeLoop()
+	{
+		StringBuilder batch = new StringBuilder(16 * 1024);
+		
+		while (true)
+		{
+			long pos = head;
+			batch.setLength(0);
+			
+			// Take every filled slot in order
+			while (true)
+			{
+				int slot = (int) (pos & MASK);
+				if (sequences.get(slot) != pos + 1)
+					break;
+				
+				format(batch, times[slot], messages[slot]);
+				messages[slot] = null;
+				levels[slot] = null;
+				sequences.set(slot, pos + CAPACITY);	// free for the next lap
+				pos++;
+			}
+			
+			long lost = dropped.getAndSet(0);
+			if (lost > 0)
+			{
+				format(batch, System.currentTimeMillis(), "WARNING: " + lost + " debug log messages dropped (log writer fell behind)");
+			}
+			
+			if (batch.length() > 0)
+			{
+				write(batch);
+				head = pos;
+			}
+			else
+			{
+				// Nothing to do, sleep until a message arrives (or a short while passes)
+				writerIdle = true;
+				if (sequences.get((int) (pos & MASK)) != pos + 1)
+				{
+					LockSupport.parkNanos(IDLE_NANOS);
+				}
+				writerIdle = false;
+			}
+		}
+	}
+	
+	// format is "[ timestamp ] TAB given_line"
+	private static void format(StringBuilder batch, long time, String message)
+	{
+		batch.append('[');
+		batch.append(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()));
+		batch.append("]:\t");
+		batch.append(message);
+		batch.append(lineSeparator);
+	}
+	
+	private static void write(StringBuilder batch)
+	{
+		String text = batch.toString();
+		console.print(text);
+		
+		FileChannel channel = file;
+		if (channel != null)
+		{
+			try
+			{
+				ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(charset));
+				while (bytes.hasRemaining())
+				{
+					channel.write(bytes);
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("ERROR!\t" + e.getMessage());
+			}
+		}
+	}
+	
+	private static void closeFile()
+	{
+		FileChannel channel = file;
+		file = null;
+		
+		if (channel != null)
+		{
+			try
+			{
+				channel.close();
+			}
+			catch (IOException e)
+			{
+				System.err.println("ERROR!\t" + e.getMessage());
+			}
+		}
+	}
+}
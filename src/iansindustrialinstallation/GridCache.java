@@ -0,0 +1,207 @@
+package iansindustrialinstallation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Keeps parsed (and classified) grids in memory, so switching between hazards
+// or exporting does not read and parse the same files again.
+// Entries are keyed by file path and remembered with the file's size and modification time;
+// every lookup checks these against the disk, so a changed file is read again.
+// Least recently used grids are dropped once the memory budget is used up.
+public final class GridCache
+{
+	// Default budget, can be set with -Diii.cache.bytes=<bytes>
+	public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+	
+	private final long budget;
+	private long used = 0;
+	
+	// Access-ordered, so iteration starts at the least recently used entry
+	private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<Path, Entry>(16, 0.75f, true);
+	
+	// The same entries looked up by the grid they hold, for classify()
+	private final Map<HazardGrid, Entry> byGrid = new IdentityHashMap<HazardGrid, Entry>();
+	
+	// File loads served from the cache, and those that had to read the file
+	private long hits = 0;
+	private long misses = 0;
+	
+	public GridCache(long budget)
+	{
+		this.budget = budget;
+	}
+	
+	// Cache with the budget from -Diii.cache.bytes, or the default
+	public static GridCache fromProperties()
+	{
+		return new GridCache(Long.getLong("iii.cache.bytes", DEFAULT_BUDGET));
+	}
+	
+	// Returns the grid of a file, reading it only if it is not cached or has changed on disk
+	public HazardGrid load(String fileName) throws IOException
+	{
+		Path path = Paths.get(fileName).toAbsolutePath().normalize();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().toMillis();
+		
+		synchronized (this)
+		{
+			Entry entry = entries.get(path);
+			if (entry != null && entry.size == size && entry.modified == modified)
+			{
+				hits++;
+				Metrics.CACHE_HITS.increment();
+				return entry.grid;
+			}
+			
+			// Stale, drop it now rather than waiting for it to be replaced
+			if (entry != null)
+			{
+				remove(path);
+			}
+			misses++;
+			Metrics.CACHE_MISSES.increment();
+		}
+		
+		// Read outside the lock, so loads of different files run at the same time
+		HazardGrid grid = HazardCsvReader.read(path.toString());
+		
+		synchronized (this)
+		{
+			// Another thread may have loaded the same file meanwhile, the newer read wins
+			remove(path);
+			
+			Entry entry = new Entry(path, size, modified, grid);
+			if (entry.bytes <= budget)
+			{
+				entries.put(path, entry);
+				byGrid.put(grid, entry);
+				used += entry.bytes;
+				evict();
+			}
+		}
+		
+		return grid;
+	}
+	
+	// Classifies a grid, reusing the bands from last time if the grid is cached
+	// and was last classified with the same classifier
+	public BandGrid classify(HazardGrid grid, HazardClassifier classifier)
+	{
+		synchronized (this)
+		{
+			Entry entry = byGrid.get(grid);
+			if (entry != null && entry.classifier == classifier)
+			{
+				Metrics.CLASSIFY_HITS.increment();
+				return entry.bands;
+			}
+		}
+		
+		Metrics.CLASSIFY_MISSES.increment();
+		BandGrid bands = classifier.classify(grid);
+		
+		synchronized (this)
+		{
+			// Only kept if the grid is still cached (it may have been evicted meanwhile)
+			Entry entry = byGrid.get(grid);
+			if (entry != null)
+			{
+				if (entry.bands == null)
+				{
+					entry.bytes += bandBytes(grid);
+					used += bandBytes(grid);
+				}
+				entry.classifier = classifier;
+				entry.bands = bands;
+				evict();
+			}
+		}
+		
+		return bands;
+	}
+	
+	// Forget a file, so the next load reads it again
+	public synchronized void invalidate(String fileName)
+	{
+		remove(Paths.get(fileName).toAbsolutePath().normalize());
+	}
+	
+	public synchronized void clear()
+	{
+		entries.clear();
+		byGrid.clear();
+		used = 0;
+	}
+	
+	// some getters for the cache status
+	public synchronized long usedBytes() { return used; }
+	public synchronized long hits() { return hits; }
+	public synchronized long misses() { return misses; }
+	public long budget() { return budget; }
+	
+	// Drop least recently used entries until the cache fits its budget again
+	private void evict()
+	{
+		Iterator<Entry> it = entries.values().iterator();
+		while (used > budget && it.hasNext())
+		{
+			Entry entry = it.next();
+			it.remove();
+			byGrid.remove(entry.grid);
+			used -= entry.bytes;
+			DebugLog.debug(() -> "Grid cache dropped " + entry.path.getFileName());
+		}
+	}
+	
+	private void remove(Path path)
+	{
+		Entry entry = entries.remove(path);
+		if (entry != null)
+		{
+			byGrid.remove(entry.grid);
+			used -= entry.bytes;
+		}
+	}
+	
+	// Rough memory used by a grid's readings and by its bands
+	private static long gridBytes(HazardGrid grid)
+	{
+		return grid.sizeInBytes() + 256;
+	}
+	
+	private static long bandBytes(HazardGrid grid)
+	{
+		return (long) (grid.width() + 3) / 4 * grid.height() + 32;
+	}
+	
+	private static final class Entry
+	{
+		final Path path;
+		final long size;
+		final long modified;
+		final HazardGrid grid;
+		long bytes;
+		
+		// Bands from the last classify() call, and the classifier that made them
+		HazardClassifier classifier = null;
+		BandGrid bands = null;
+		
+		Entry(Path path, long size, long modified, HazardGrid grid)
+		{
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+			this.grid = grid;
+			this.bytes = gridBytes(grid);
+		}
+	}
+}
@@ -0,0 +1,500 @@
+package iansindustrialinstallation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+// Writes the .RAF, .DAT and .RPT exports of one classified grid.
+// Each row is visited once and goes to all three buffered files as it is read,
+// so nothing is held in memory apart from the band grid itself, one row and the write buffers.
+//
+// Formats:
+//   .RAF  binary header then every cell's band letter in row-major order (see RafFile)
+//   .DAT  one "x,y,letter" line per cell (x and y start at 1)
+//   .RPT  one line per row of "letter,count" pairs, one pair per run of cells in the same band
+//   .SUM  summary statistics of the readings, one "name,value" line each (see exportSummary)
+//   .ZON  danger zones, one line per zone (see exportZones)
+//
+// Beside them a .ROWHASH file keeps a hash of every row's bands, so exportChanged can
+// compare a new grid against the previous export and only rewrite the rows that changed.
+public final class GridExporter
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	// Line ends match the PrintWriter.println output the files always had
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+	
+	// Letters as bytes, indexed by band
+	private static final byte[] LETTERS = new byte[HazardClassifier.BAND_COUNT];
+	static
+	{
+		for (int i = 0; i < LETTERS.length; i++)
+		{
+			LETTERS[i] = (byte) HazardClassifier.LETTERS[i];
+		}
+	}
+	
+	// .ROWHASH layout: magic, version, width, height, then one long hash per row
+	private static final int ROWHASH_MAGIC = 0x49494948;	// "IIIH"
+	private static final int ROWHASH_VERSION = 1;
+	
+	private GridExporter()
+	{
+	}
+	
+	// Export the grid of the named hazard into dir as <baseName>.RAF, <baseName>.DAT and <baseName>.RPT,
+	// rewriting all three files
+	public static void export(BandGrid grid, String hazard, File dir, String baseName) throws IOException
+	{
+		long start = System.nanoTime();
+		int width = grid.width();
+		int height = grid.height();
+		
+		// The hashes are only valid once the files are complete
+		File hashFile = new File(dir, baseName + ".ROWHASH");
+		Files.deleteIfExists(hashFile.toPath());
+		
+		// Scratch space for one row of letters and for writing numbers without making Strings
+		byte[] letters = new byte[width];
+		byte[] digits = new byte[11];
+		long[] hashes = new long[height];
+		
+		try (OutputStream raf = open(dir, baseName + ".RAF");
+				OutputStream dat = open(dir, baseName + ".DAT");
+				OutputStream rpt = open(dir, baseName + ".RPT"))
+		{
+			RafFile.writeHeader(raf, width, height, hazard, System.currentTimeMillis());
+			
+			// for each row/line...
+			for (int y = 0; y < height; y++)
+			{
+				checkInterrupted(baseName);
+				
+				hashes[y] = rowLetters(grid, y, letters);
+				
+				raf.write(letters, 0, width);
+				writeDatRow(dat, letters, width, y, digits);
+				writeRptRow(rpt, letters, width, digits);
+			}
+		}
+		
+		writeHashes(hashFile, width, height, hashes);
+		Metrics.EXPORT_RAF_DAT_RPT.record(start);
+	}
+	
+	// Export the grid like export(), but if the files of a previous export of the same size are there,
+	// only rewrite the rows whose bands changed since then:
+	// changed rows of the .RAF and .DAT are patched in place, and the .RPT is rebuilt
+	// by copying its unchanged lines. Returns the number of rows rewritten.
+	public static int exportChanged(BandGrid grid, String hazard, File dir, String baseName) throws IOException
+	{
+		long start = System.nanoTime();
+		int width = grid.width();
+		int height = grid.height();
+		
+		File hashFile = new File(dir, baseName + ".ROWHASH");
+		File rafFile = new File(dir, baseName + ".RAF");
+		File datFile = new File(dir, baseName + ".DAT");
+		File rptFile = new File(dir, baseName + ".RPT");
+		
+		long[] oldHashes = readHashes(hashFile, width, height);
+		if (oldHashes == null || !rafFile.isFile() || !rptFile.isFile() || datFile.length() != datLength(width, height))
+		{
+			// Timed as a full export only
+			export(grid, hazard, dir, baseName);
+			return height;
+		}
+		
+		// Find the rows that changed
+		byte[] letters = new byte[width];
+		long[] hashes = new long[height];
+		boolean[] changed = new boolean[height];
+		int changedRows = 0;
+		
+		for (int y = 0; y < height; y++)
+		{
+			hashes[y] = rowLetters(grid, y, letters);
+			if (hashes[y] != oldHashes[y])
+			{
+				changed[y] = true;
+				changedRows++;
+			}
+		}
+		
+		// If the files get only part way through, the next export has to be a full one
+		Files.deleteIfExists(hashFile.toPath());
+		
+		// A .RAF of another size cannot be patched, so it is written again in full,
+		// and so is one RafFile cannot open (an old text .RAF, another version, or a damaged header)
+		boolean sameSize;
+		try (RafFile raf = new RafFile(rafFile, "r"))
+		{
+			sameSize = raf.width() == width && raf.height() == height;
+		}
+		catch (IOException e)
+		{
+			DebugLog.info("Exporting " + baseName + " in full: " + e.getMessage());
+			sameSize = false;
+		}
+		if (!sameSize)
+		{
+			export(grid, hazard, dir, baseName);
+			return height;
+		}
+		
+		try (RafFile raf = new RafFile(rafFile, "rw"))
+		{
+			// .RAF: patch the bytes of each changed row, and record when
+			for (int y = 0; y < height; y++)
+			{
+				if (changed[y])
+				{
+					checkInterrupted(baseName);
+					rowLetters(grid, y, letters);
+					raf.writeRow(y, letters);
+				}
+			}
+			raf.setTimestamp(System.currentTimeMillis());
+		}
+		
+		if (changedRows > 0)
+		{
+			patchDat(grid, datFile, changed, letters, baseName);
+			rebuildRpt(grid, rptFile, changed, letters, baseName);
+		}
+		
+		writeHashes(hashFile, width, height, hashes);
+		Metrics.EXPORT_CHANGED.record(start);
+		return changedRows;
+	}
+	
+	// Export the statistics of the named hazard's grid into dir as <baseName>.SUM:
+	// cell count, lowest, highest and mean reading, percentiles,
+	// then the number of cells between each of the hazard's limits and in each band
+	public static void exportSummary(HazardStatistics stats, String hazard, File dir, String baseName) throws IOException
+	{
+		long start = System.nanoTime();
+		try (PrintWriter sum = new PrintWriter(new OutputStreamWriter(open(dir, baseName + ".SUM"), "US-ASCII")))
+		{
+			sum.println("Hazard," + hazard);
+			sum.println("Cells," + stats.cells());
+			sum.println("Min," + stats.min());
+			sum.println("Max," + stats.max());
+			sum.println("Mean," + String.format(Locale.ROOT, "%.3f", stats.mean()));
+			
+			for (int i = 0; i < HazardStatistics.PERCENTILES.length; i++)
+			{
+				sum.println("P" + (int) HazardStatistics.PERCENTILES[i] + "," + stats.percentile(i));
+			}
+			for (int i = 0; i < HazardStatistics.LIMIT_RANGES.length; i++)
+			{
+				sum.println(HazardStatistics.LIMIT_RANGES[i] + "," + stats.limitCount(i));
+			}
+			for (int band = 0; band < HazardClassifier.BAND_COUNT; band++)
+			{
+				sum.println(HazardClassifier.LETTERS[band] + "," + stats.bandCount(band));
+			}
+			
+			if (sum.checkError())
+				throw new IOException("Unable to write " + baseName + ".SUM");
+		}
+		Metrics.EXPORT_SUM.record(start);
+	}
+	
+	// Export the danger zones of the named hazard's grid into dir as <baseName>.ZON:
+	// a heading line, then one "id,size,left,top,right,bottom,peak,peakX,peakY,letter" line per zone,
+	// with cell positions starting at 1 like the .DAT and letter being the zone's worst band
+	public static void exportZones(DangerZones zones, String hazard, File dir, String baseName) throws IOException
+	{
+		long start = System.nanoTime();
+		try (PrintWriter zon = new PrintWriter(new OutputStreamWriter(open(dir, baseName + ".ZON"), "US-ASCII")))
+		{
+			zon.println("id,size,left,top,right,bottom,peak,peakX,peakY,band");
+			
+			for (DangerZones.Zone zone : zones.zones())
+			{
+				zon.println((zone.id() + 1) + "," + zone.size()
+						+ "," + (zone.minX() + 1) + "," + (zone.minY() + 1) + "," + (zone.maxX() + 1) + "," + (zone.maxY() + 1)
+						+ "," + zone.peak() + "," + (zone.peakX() + 1) + "," + (zone.peakY() + 1)
+						+ "," + HazardClassifier.LETTERS[zone.worstBand()]);
+			}
+			
+			if (zon.checkError())
+				throw new IOException("Unable to write " + baseName + ".ZON (" + hazard + ")");
+		}
+		Metrics.EXPORT_ZON.record(start);
+	}
+	
+	// .DAT lines have the same length whatever the band, so each changed row
+	// is written back over itself at its known offset
+	private static void patchDat(BandGrid grid, File datFile, boolean[] changed, byte[] letters, String baseName) throws IOException
+	{
+		int width = grid.width();
+		byte[] digits = new byte[11];
+		ByteArrayOutputStream row = new ByteArrayOutputStream();
+		
+		try (RandomAccessFile dat = new RandomAccessFile(datFile, "rw"))
+		{
+			long offset = 0;
+			for (int y = 0; y < changed.length; y++)
+			{
+				if (changed[y])
+				{
+					checkInterrupted(baseName);
+					rowLetters(grid, y, letters);
+					row.reset();
+					writeDatRow(row, letters, width, y, digits);
+					
+					dat.seek(offset);
+					dat.write(row.toByteArray());
+				}
+				offset += datRowLength(width, y);
+			}
+		}
+	}
+	
+	// .RPT lines vary in length, so the file is rebuilt:
+	// unchanged lines are copied across as bytes, changed rows are regenerated
+	private static void rebuildRpt(BandGrid grid, File rptFile, boolean[] changed, byte[] letters, String baseName) throws IOException
+	{
+		int width = grid.width();
+		byte[] digits = new byte[11];
+		File temp = new File(rptFile.getPath() + ".tmp");
+		boolean moved = false;
+		
+		try
+		{
+			try (InputStream in = new BufferedInputStream(new FileInputStream(rptFile), BUFFER_SIZE);
+					OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))
+			{
+				for (int y = 0; y < changed.length; y++)
+				{
+					if (changed[y])
+					{
+						checkInterrupted(baseName);
+						skipLine(in);
+						rowLetters(grid, y, letters);
+						writeRptRow(out, letters, width, digits);
+					}
+					else if (!copyLine(in, out))
+					{
+						throw new IOException(rptFile + " has fewer than " + changed.length + " lines");
+					}
+				}
+			}
+			
+			Files.move(temp.toPath(), rptFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			moved = true;
+		}
+		finally
+		{
+			// Interrupted or failed part way, so the half-built copy is not left behind
+			if (!moved)
+			{
+				Files.deleteIfExists(temp.toPath());
+			}
+		}
+	}
+	
+	// Fill letters with the band letters of row y, returning a hash of the row (64-bit FNV-1a)
+	private static long rowLetters(BandGrid grid, int y, byte[] letters)
+	{
+		int width = grid.width();
+		long hash = 0xcbf29ce484222325L;
+		
+		// Bands first, turned into letters in place
+		grid.row(y, letters, 0);
+		for (int x = 0; x < width; x++)
+		{
+			byte band = letters[x];
+			letters[x] = LETTERS[band];
+			hash = (hash ^ band) * 0x100000001b3L;
+		}
+		
+		return hash;
+	}
+	
+	// DAT: "x_coord,y_coord,colorletter" for each cell of the row
+	private static void writeDatRow(OutputStream dat, byte[] letters, int width, int y, byte[] digits) throws IOException
+	{
+		for (int x = 0; x < width; x++)
+		{
+			writeInt(dat, x + 1, digits);
+			dat.write(',');
+			writeInt(dat, y + 1, digits);
+			dat.write(',');
+			dat.write(letters[x]);
+			dat.write(LINE_SEPARATOR);
+		}
+	}
+	
+	// RPT: "letter,count" for each run of the same letter, comma separated, as one line
+	private static void writeRptRow(OutputStream rpt, byte[] letters, int width, byte[] digits) throws IOException
+	{
+		int runStart = 0;
+		for (int x = 1; x <= width; x++)
+		{
+			if (x == width || letters[x] != letters[runStart])
+			{
+				if (runStart > 0)
+					rpt.write(',');
+				
+				rpt.write(letters[runStart]);
+				rpt.write(',');
+				writeInt(rpt, x - runStart, digits);
+				runStart = x;
+			}
+		}
+		rpt.write(LINE_SEPARATOR);
+	}
+	
+	// Byte length of row y of the .DAT
+	private static long datRowLength(int width, int y)
+	{
+		return sumOfDigits(width) + (long) width * (digitCount(y + 1) + 3 + LINE_SEPARATOR.length);
+	}
+	
+	// Byte length of a whole .DAT
+	private static long datLength(int width, int height)
+	{
+		long length = 0;
+		for (int y = 0; y < height; y++)
+		{
+			length += datRowLength(width, y);
+		}
+		return length;
+	}
+	
+	// Total digits of the numbers 1 to n
+	private static long sumOfDigits(int n)
+	{
+		long total = 0;
+		long low = 1;
+		for (int digits = 1; low <= n; digits++, low *= 10)
+		{
+			total += (Math.min(n, low * 10 - 1) - low + 1) * digits;
+		}
+		return total;
+	}
+	
+	private static int digitCount(int n)
+	{
+		int digits = 1;
+		while (n >= 10)
+		{
+			n /= 10;
+			digits++;
+		}
+		return digits;
+	}
+	
+	// Previous row hashes, or null if there are none for a grid of this size
+	private static long[] readHashes(File hashFile, int width, int height)
+	{
+		if (!hashFile.isFile())
+			return null;
+		
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(hashFile), BUFFER_SIZE)))
+		{
+			if (in.readInt() != ROWHASH_MAGIC || in.readInt() != ROWHASH_VERSION || in.readInt() != width || in.readInt() != height)
+				return null;
+			
+			long[] hashes = new long[height];
+			for (int y = 0; y < height; y++)
+			{
+				hashes[y] = in.readLong();
+			}
+			return hashes;
+		}
+		catch (IOException e)
+		{
+			// Unreadable hashes just mean a full export
+			return null;
+		}
+	}
+	
+	private static void writeHashes(File hashFile, int width, int height, long[] hashes) throws IOException
+	{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(hashFile), BUFFER_SIZE)))
+		{
+			out.writeInt(ROWHASH_MAGIC);
+			out.writeInt(ROWHASH_VERSION);
+			out.writeInt(width);
+			out.writeInt(height);
+			for (long hash : hashes)
+			{
+				out.writeLong(hash);
+			}
+		}
+	}
+	
+	// Copy one line (including its line end) from in to out, false if at end of input
+	private static boolean copyLine(InputStream in, OutputStream out) throws IOException
+	{
+		int b = in.read();
+		if (b == -1)
+			return false;
+		
+		while (b != -1)
+		{
+			out.write(b);
+			if (b == '\n')
+				break;
+			b = in.read();
+		}
+		return true;
+	}
+	
+	private static void skipLine(InputStream in) throws IOException
+	{
+		int b;
+		do
+		{
+			b = in.read();
+		}
+		while (b != -1 && b != '\n');
+	}
+	
+	private static OutputStream open(File dir, String fileName) throws IOException
+	{
+		return new BufferedOutputStream(new FileOutputStream(new File(dir, fileName)), BUFFER_SIZE);
+	}
+	
+	// Stop if the export was cancelled
+	private static void checkInterrupted(String baseName) throws InterruptedIOException
+	{
+		if (Thread.currentThread().isInterrupted())
+		{
+			throw new InterruptedIOException("Export of " + baseName + " cancelled");
+		}
+	}
+	
+	// Write a non-negative int as ASCII digits
+	private static void writeInt(OutputStream out, int value, byte[] digits) throws IOException
+	{
+		int pos = digits.length;
+		do
+		{
+			digits[--pos] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		while (value > 0);
+		
+		out.write(digits, pos, digits.length - pos);
+	}
+}
@@ -0,0 +1,49 @@
+package iansindustrialinstallation;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+// Holds the three header lines found at the top of every hazard .csv file
+// (site address, date of the sweep, and time of the sweep)
+public final class GridHeader
+{
+	// Date and time as written by the sensors, e.g. "20/10/2027" and "3:00pm"
+	private static final DateTimeFormatter SWEEP_TIME = new DateTimeFormatterBuilder()
+		.parseCaseInsensitive()
+		.appendPattern("d/M/uuuu h:mma")
+		.toFormatter(Locale.ENGLISH);
+	
+	private final String address;
+	private final String date;
+	private final String time;
+	
+	public GridHeader(String address, String date, String time)
+	{
+		this.address = address;
+		this.date = date;
+		this.time = time;
+	}
+	
+	// some getters for the header contents
+	public String address() { return address; }
+	public String date() { return date; }
+	public String time() { return time; }
+	
+	// When the sweep was taken (milliseconds since 1970, local time zone),
+	// or -1 if the date and time lines cannot be understood
+	public long timestamp()
+	{
+		try
+		{
+			return LocalDateTime.parse(date.trim() + " " + time.trim(), SWEEP_TIME).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		}
+		catch (DateTimeParseException e)
+		{
+			return -1;
+		}
+	}
+}
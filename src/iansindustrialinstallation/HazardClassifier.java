@@ -0,0 +1,89 @@
+package iansindustrialinstallation;
+
+// Sorts readings of one hazard into bands using a lookup table worked out once from its limits:
+//   0 is WHITE, above 0 but below the yellow limit is GREEN,
+//   from the yellow limit up to below the red limit is YELLOW, and the red limit or above is RED.
+// (Readings below 0 count as GREEN, the same as any other non-zero reading below the yellow limit.)
+public final class HazardClassifier
+{
+	// Bands, in order of severity
+	public static final byte WHITE = 0;
+	public static final byte GREEN = 1;
+	public static final byte YELLOW = 2;
+	public static final byte RED = 3;
+	
+	public static final int BAND_COUNT = 4;
+	
+	// Letter used for each band in the .RAF, .DAT and .RPT exports
+	public static final char[] LETTERS = { 'W', 'G', 'Y', 'R' };
+	
+	// lookup[v + 1] is the band of reading v, for v from -1 up to the red limit.
+	// Readings outside that range are clamped to the ends, which hold the right bands for them
+	private final byte[] lookup;
+	private final int maxValue;	// highest reading in the table
+	
+	public HazardClassifier(int yellowLimit, int redLimit)
+	{
+		int top = Math.max(1, Math.max(yellowLimit, redLimit));
+		lookup = new byte[top + 2];
+		maxValue = top;
+		
+		for (int v = -1; v <= top; v++)
+		{
+			byte band;
+			if (v == 0)
+				band = WHITE;
+			else if (v < yellowLimit)
+				band = GREEN;
+			else if (v < redLimit)
+				band = YELLOW;
+			else
+				band = RED;
+			
+			lookup[v + 1] = band;
+		}
+	}
+	
+	// Band of a single reading
+	public byte classify(int value)
+	{
+		return lookup[clamp(value)];
+	}
+	
+	// Classify a whole grid in one pass, a row at a time (whatever layout the grid has)
+	public BandGrid classify(HazardGrid grid)
+	{
+		long start = System.nanoTime();
+		int width = grid.width();
+		int[] values = new int[width];
+		byte[] rowBands = new byte[width];
+		BandGrid bands = new BandGrid(width, grid.height());
+		byte[] table = lookup;
+		int top = maxValue;
+		
+		for (int y = 0; y < grid.height(); y++)
+		{
+			grid.row(y, values, 0);
+			for (int x = 0; x < width; x++)
+			{
+				// Branch-free clamp into the table
+				rowBands[x] = table[Math.min(Math.max(values[x], -1), top) + 1];
+			}
+			bands.setRow(y, rowBands, 0);
+		}
+		
+		Metrics.CLASSIFY.record(start);
+		Metrics.CELLS_CLASSIFIED.add((long) width * grid.height());
+		return bands;
+	}
+	
+	// Raw access to the lookup table and its highest reading, for fused loops inside the package
+	// (see CompositeGrid). Callers must not modify the table.
+	byte[] lookup() { return lookup; }
+	int maxValue() { return maxValue; }
+	
+	private int clamp(int value)
+	{
+		return Math.min(Math.max(value, -1), maxValue) + 1;
+	}
+}
@@ -0,0 +1,196 @@
+package iansindustrialinstallation;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Incremental parser for the hazard .csv format:
+// three header lines (address, date, time) followed by rows of comma separated integer readings.
+// Bytes are fed in as they are read and readings are parsed straight from the buffer,
+// so the file is read once, the grid dimensions are worked out on the way,
+// and no String is made for any line or token except the three header lines.
+final class HazardCsvParser
+{
+	static final int HEADER_LINES = 3;
+	
+	// Header lines collected so far
+	private final String[] header = new String[HEADER_LINES];
+	private final ByteArrayOutputStream headerLine = new ByteArrayOutputStream(64);
+	private int headerCount = 0;
+	
+	// Readings collected so far, grown as needed
+	private int[] values = new int[1024];
+	private int count = 0;
+	
+	// Width is fixed by the first data row, every later row must match it
+	private int width = -1;
+	private int row = 0;		// data rows completed so far
+	private int column = 0;		// readings completed on the current row
+	
+	// State of the reading currently being parsed
+	private long value = 0;
+	private boolean negative = false;
+	private boolean inDigits = false;
+	private boolean afterDigits = false;	// digits ended by whitespace, only a separator may follow
+	private boolean lineEmpty = true;
+	private boolean blankLineSeen = false;
+	
+	// Parse the remaining bytes of the given buffer, leaving its position at its limit
+	void feed(ByteBuffer buf) throws HazardDataFormatException
+	{
+		int pos = buf.position();
+		int limit = buf.limit();
+		
+		// Header lines are rare, take them one byte at a time
+		while (headerCount < HEADER_LINES && pos < limit)
+		{
+			byte b = buf.get(pos++);
+			if (b == '\n')
+			{
+				endHeaderLine();
+			}
+			else
+			{
+				headerLine.write(b);
+			}
+		}
+		
+		// Data lines
+		for (; pos < limit; pos++)
+		{
+			byte b = buf.get(pos);
+			
+			// Digit, the common case
+			if (b >= '0' && b <= '9')
+			{
+				if (afterDigits)
+					throw error("Unexpected character '" + (char) b + "' in reading");
+				
+				value = value * 10 + (b - '0');
+				if (value > (long) Integer.MAX_VALUE + 1)
+					throw error("Reading does not fit in an int");
+				
+				inDigits = true;
+				lineEmpty = false;
+			}
+			// End of a reading
+			else if (b == ',')
+			{
+				endValue();
+			}
+			// End of a row
+			else if (b == '\n')
+			{
+				endLine();
+			}
+			else if (b == '-' && !inDigits && !negative && !afterDigits)
+			{
+				negative = true;
+				lineEmpty = false;
+			}
+			// Whitespace around a reading (including the \r of Windows line endings) is ignored
+			else if (b == ' ' || b == '\t' || b == '\r')
+			{
+				if (inDigits)
+					afterDigits = true;
+			}
+			else
+			{
+				throw error("Unexpected character '" + (char) b + "' in reading");
+			}
+		}
+		
+		buf.position(limit);
+	}
+	
+	// Finish off the last line (which may have no line break) and build the grid
+	HazardGrid finish() throws HazardDataFormatException
+	{
+		if (headerCount < HEADER_LINES)
+		{
+			if (headerLine.size() > 0)
+				endHeaderLine();
+			
+			if (headerCount < HEADER_LINES)
+				throw new HazardDataFormatException("File ends before the " + HEADER_LINES + " header lines (address, date, time)", 0, 0);
+		}
+		
+		endLine();
+		
+		int w = width < 0 ? 0 : width;
+		return HazardGrid.compact(new GridHeader(header[0], header[1], header[2]), w, row, Arrays.copyOf(values, count));
+	}
+	
+	private void endHeaderLine()
+	{
+		byte[] bytes = headerLine.toByteArray();
+		int len = bytes.length;
+		
+		// Drop the \r of Windows line endings
+		if (len > 0 && bytes[len - 1] == '\r')
+			len--;
+		
+		header[headerCount++] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+		headerLine.reset();
+	}
+	
+	private void endValue() throws HazardDataFormatException
+	{
+		if (!inDigits)
+			throw error("Missing reading");
+		
+		long v = negative ? -value : value;
+		if (v > Integer.MAX_VALUE)
+			throw error("Reading does not fit in an int");
+		
+		if (width >= 0 && column >= width)
+			throw error("Row has more than " + width + " readings");
+		
+		if (count == values.length)
+			values = Arrays.copyOf(values, values.length * 2);
+		
+		values[count++] = (int) v;
+		column++;
+		
+		value = 0;
+		negative = false;
+		inDigits = false;
+		afterDigits = false;
+	}
+	
+	private void endLine() throws HazardDataFormatException
+	{
+		// Blank lines are only allowed at the end of the file
+		if (lineEmpty && column == 0)
+		{
+			blankLineSeen = true;
+			return;
+		}
+		
+		if (blankLineSeen)
+			throw new HazardDataFormatException("Blank line before this row", row + 1, 1);
+		
+		endValue();
+		
+		if (width < 0)
+		{
+			// First row decides the width, so the array can be sized up front
+			width = column;
+		}
+		else if (column != width)
+		{
+			throw new HazardDataFormatException("Row has " + column + " readings, expected " + width, row + 1, column);
+		}
+		
+		row++;
+		column = 0;
+		lineEmpty = true;
+	}
+	
+	// Builds an exception for the reading currently being parsed
+	private HazardDataFormatException error(String message)
+	{
+		return new HazardDataFormatException(message, row + 1, column + 1);
+	}
+}
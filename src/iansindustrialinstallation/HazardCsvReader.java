@@ -0,0 +1,124 @@
+package iansindustrialinstallation;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Reads a hazard .csv file into a HazardGrid in a single pass.
+// Small files are streamed through a buffer, files at or above the mapped threshold
+// are memory-mapped and parsed directly from the mapped pages.
+public final class HazardCsvReader
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	// Largest region mapped at once (a single mapping is limited to 2GB)
+	private static final long MAP_CHUNK_SIZE = 1L << 30;
+	
+	// Mapped regions are parsed this many bytes at a time, checking for cancellation in between
+	private static final int MAP_SLICE_SIZE = 1 << 20;
+	
+	// Files of this many bytes or more are memory-mapped,
+	// can be set with -Diii.mmap.threshold=<bytes> or setMappedThreshold()
+	private static volatile long mappedThreshold = Long.getLong("iii.mmap.threshold", 16L * 1024 * 1024);
+	
+	private HazardCsvReader()
+	{
+	}
+	
+	public static long getMappedThreshold()
+	{
+		return mappedThreshold;
+	}
+	
+	public static void setMappedThreshold(long bytes)
+	{
+		mappedThreshold = bytes;
+	}
+	
+	// Read the given file, choosing the loading path by its size
+	public static HazardGrid read(String fileName) throws IOException
+	{
+		long start = System.nanoTime();
+		Path path = Paths.get(fileName);
+		long size = Files.size(path);
+		HazardGrid grid;
+		
+		if (size >= mappedThreshold)
+		{
+			grid = readMapped(path);
+		}
+		else
+		{
+			try (InputStream in = new FileInputStream(fileName))
+			{
+				grid = read(in);
+			}
+		}
+		
+		Metrics.PARSE.record(start);
+		Metrics.BYTES_READ.add(size);
+		return grid;
+	}
+	
+	// Read everything from the given stream (the stream is not closed)
+	public static HazardGrid read(InputStream in) throws IOException
+	{
+		HazardCsvParser parser = new HazardCsvParser();
+		byte[] buf = new byte[BUFFER_SIZE];
+		ByteBuffer wrapped = ByteBuffer.wrap(buf);
+		
+		int n;
+		while ((n = in.read(buf)) != -1)
+		{
+			checkInterrupted();
+			wrapped.clear();
+			wrapped.limit(n);
+			parser.feed(wrapped);
+		}
+		
+		return parser.finish();
+	}
+	
+	// Read the given file by memory-mapping it, one chunk at a time
+	public static HazardGrid readMapped(Path path) throws IOException
+	{
+		HazardCsvParser parser = new HazardCsvParser();
+		
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			
+			for (long offset = 0; offset < size; offset += MAP_CHUNK_SIZE)
+			{
+				MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_CHUNK_SIZE, size - offset));
+				int end = chunk.limit();
+				
+				for (int slice = 0; slice < end; slice += MAP_SLICE_SIZE)
+				{
+					checkInterrupted();
+					chunk.limit(Math.min(end, slice + MAP_SLICE_SIZE));
+					parser.feed(chunk);
+				}
+			}
+		}
+		
+		return parser.finish();
+	}
+	
+	// Lets a background load be cancelled by interrupting its thread
+	private static void checkInterrupted() throws InterruptedIOException
+	{
+		if (Thread.currentThread().isInterrupted())
+		{
+			throw new InterruptedIOException("Loading cancelled");
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package iansindustrialinstallation;
+
+import java.io.IOException;
+
+// Thrown when a hazard .csv file cannot be parsed.
+// Carries the data row and column (both starting at 1, as used in the .DAT export)
+// of the reading that caused the problem, or 0 when the problem is not tied to a cell.
+public class HazardDataFormatException extends IOException
+{
+	private static final long serialVersionUID = 1L;
+	
+	private final int row;
+	private final int column;
+	
+	public HazardDataFormatException(String message, int row, int column)
+	{
+		super(message + (row > 0 ? " at row " + row + ", column " + column : ""));
+		this.row = row;
+		this.column = column;
+	}
+	
+	public int getRow() { return row; }
+	public int getColumn() { return column; }
+}
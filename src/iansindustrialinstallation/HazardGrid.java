@@ -0,0 +1,177 @@
+package iansindustrialinstallation;
+
+import java.util.Arrays;
+
+// Grid model for the data readings of one hazard .csv file.
+// Every reading is parsed once at load time and kept as a primitive int, in row-major order
+// (index = y * width + x), in one of two layouts picked by compact() from how many readings are 0:
+//
+// - dense: a single flat array of every reading
+// - sparse: only the non-zero readings, row by row, with the column of each and where each row
+//   starts (compressed sparse rows). Site grids are mostly 0, so this is usually several times smaller
+//   https://en.wikipedia.org/wiki/Sparse_matrix#Compressed_sparse_row_(CSR,_CRS_or_Yale_format)
+//
+// Either way the readings are read the same way, one at a time with get() or a row at a time with row(),
+// so nothing else needs to know which layout a grid has.
+public final class HazardGrid
+{
+	private final GridHeader header;
+	private final int width;
+	private final int height;
+	
+	// Dense layout (null if sparse)
+	private final int[] values;
+	
+	// Sparse layout (all null if dense): the non-zero readings of row y and their columns
+	// are at rowStarts[y] up to rowStarts[y + 1]
+	private final int[] rowStarts;
+	private final int[] columns;
+	private final int[] readings;
+	
+	public HazardGrid(GridHeader header, int width, int height, int[] values)
+	{
+		if (width < 0 || height < 0 || values.length != width * height)
+		{
+			throw new IllegalArgumentException("Grid of " + width + "x" + height + " cannot hold " + values.length + " values");
+		}
+		
+		this.header = header;
+		this.width = width;
+		this.height = height;
+		this.values = values;
+		this.rowStarts = null;
+		this.columns = null;
+		this.readings = null;
+	}
+	
+	private HazardGrid(GridHeader header, int width, int height, int[] rowStarts, int[] columns, int[] readings)
+	{
+		this.header = header;
+		this.width = width;
+		this.height = height;
+		this.values = null;
+		this.rowStarts = rowStarts;
+		this.columns = columns;
+		this.readings = readings;
+	}
+	
+	// Grid of the given readings in whichever layout takes less memory.
+	// Sparse is only picked when it at least halves the size, as its reads are a little slower
+	public static HazardGrid compact(GridHeader header, int width, int height, int[] values)
+	{
+		HazardGrid dense = new HazardGrid(header, width, height, values);
+		
+		int nonZero = 0;
+		for (int v : values)
+		{
+			if (v != 0)
+				nonZero++;
+		}
+		
+		if (sparseBytes(height, nonZero) * 2 > denseBytes(values.length))
+			return dense;
+		
+		int[] rowStarts = new int[height + 1];
+		int[] columns = new int[nonZero];
+		int[] readings = new int[nonZero];
+		int n = 0;
+		
+		for (int y = 0; y < height; y++)
+		{
+			rowStarts[y] = n;
+			for (int x = 0, i = y * width; x < width; x++, i++)
+			{
+				if (values[i] != 0)
+				{
+					columns[n] = x;
+					readings[n] = values[i];
+					n++;
+				}
+			}
+		}
+		rowStarts[height] = n;
+		
+		return new HazardGrid(header, width, height, rowStarts, columns, readings);
+	}
+	
+	// some getters for the grid contents
+	public GridHeader header() { return header; }
+	public int width() { return width; }
+	public int height() { return height; }
+	
+	// Is only the non-zero readings kept?
+	public boolean isSparse() { return values == null; }
+	
+	// Rough memory used by the readings
+	public long sizeInBytes()
+	{
+		return isSparse() ? sparseBytes(height, readings.length) : denseBytes(values.length);
+	}
+	
+	// Index of a cell in the flat array
+	public int index(int x, int y)
+	{
+		return y * width + x;
+	}
+	
+	// Reading at the given x,y coordinate
+	public int get(int x, int y)
+	{
+		if (values != null)
+			return values[y * width + x];
+		
+		int n = Arrays.binarySearch(columns, rowStarts[y], rowStarts[y + 1], x);
+		return n >= 0 ? readings[n] : 0;
+	}
+	
+	// Reading at the given flat index
+	public int get(int index)
+	{
+		if (values != null)
+			return values[index];
+		
+		return get(index % width, index / width);
+	}
+	
+	// Copy the readings of row y into the given array, starting at offset
+	public void row(int y, int[] into, int offset)
+	{
+		if (values != null)
+		{
+			System.arraycopy(values, y * width, into, offset, width);
+			return;
+		}
+		
+		Arrays.fill(into, offset, offset + width, 0);
+		for (int n = rowStarts[y], end = rowStarts[y + 1]; n < end; n++)
+		{
+			into[offset + columns[n]] = readings[n];
+		}
+	}
+	
+	// Every reading in one flat array for bulk loops inside the package:
+	// the backing array of a dense grid, or a new array filled from a sparse one.
+	// Callers must not modify it.
+	int[] values()
+	{
+		if (values != null)
+			return values;
+		
+		int[] all = new int[width * height];
+		for (int y = 0; y < height; y++)
+		{
+			row(y, all, y * width);
+		}
+		return all;
+	}
+	
+	private static long denseBytes(int cells)
+	{
+		return 4L * cells;
+	}
+	
+	private static long sparseBytes(int height, int nonZero)
+	{
+		return 4L * (height + 1) + 8L * nonZero;
+	}
+}
@@ -0,0 +1,152 @@
+package iansindustrialinstallation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import iansindustrialinstallation.IansIndustrialInstallation.Hazard;
+
+// Loads the data files of several hazards at the same time
+// on a bounded pool of background threads, one grid model per hazard.
+// Given a GridCache, files that have not changed since they were last loaded are not read again
+public final class HazardGridLoader
+{
+	// Name the worst case of all hazards is exported under
+	public static final String COMPOSITE = "Composite";
+	
+	private final ExecutorService pool;
+	private final GridCache cache;	// null to always read the files
+	
+	public HazardGridLoader(int threads)
+	{
+		this(threads, null);
+	}
+	
+	public HazardGridLoader(int threads, GridCache cache)
+	{
+		this.cache = cache;
+		
+		final AtomicInteger threadCount = new AtomicInteger();
+		
+		// Daemon threads, so an idle pool never keeps the program running
+		ThreadFactory factory = new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "hazard-loader-" + threadCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+		
+		pool = Executors.newFixedThreadPool(Math.max(1, threads), factory);
+	}
+	
+	// Default data file name for a hazard
+	public static String fileNameFor(Hazard hazard)
+	{
+		return hazard.fileNameFor(HazardRegistry.DEFAULT_SWEEP);
+	}
+	
+	// Hazard measured in a sweep file, from its name, or null if it is not a sweep file
+	// (the first hazard whose file pattern matches, if more than one does)
+	public static Hazard hazardOfFile(String fileName)
+	{
+		for (Hazard hazard : Hazard.values())
+		{
+			if (hazard.sweepOf(fileName) != null)
+				return hazard;
+		}
+		return null;
+	}
+	
+	// Base name used for the exports of a data file (its name without .csv)
+	public static String exportNameFor(String fileName)
+	{
+		String name = new File(fileName).getName();
+		return name.toLowerCase().endsWith(".csv") ? name.substring(0, name.length() - ".csv".length()) : name;
+	}
+	
+	// Base name used for the composite exports of the sweep a data file belongs to
+	// (Ians_<sweep>_Composite)
+	public static String compositeNameFor(String fileName)
+	{
+		String name = new File(fileName).getName();
+		Hazard hazard = hazardOfFile(name);
+		String sweep = hazard != null ? hazard.sweepOf(name) : null;
+		return sweep != null && !sweep.isEmpty() ? "Ians_" + sweep + "_" + COMPOSITE : exportNameFor(fileName) + "_" + COMPOSITE;
+	}
+	
+	// Load a file on the calling thread, through the cache if there is one
+	public HazardGrid read(String fileName) throws IOException
+	{
+		return cache != null ? cache.load(fileName) : HazardCsvReader.read(fileName);
+	}
+	
+	// Start loading a single file
+	public Future<HazardGrid> load(final String fileName)
+	{
+		return pool.submit(new Callable<HazardGrid>()
+		{
+			@Override
+			public HazardGrid call() throws Exception
+			{
+				return read(fileName);
+			}
+		});
+	}
+	
+	// Start loading the default data file of every given hazard at once.
+	// Each future fails on its own, so one bad file does not stop the others.
+	public Map<Hazard, Future<HazardGrid>> loadAll(Hazard... hazards)
+	{
+		Map<Hazard, String> fileNames = new LinkedHashMap<Hazard, String>();
+		
+		for (Hazard hazard : hazards)
+		{
+			fileNames.put(hazard, fileNameFor(hazard));
+		}
+		
+		return loadAll(fileNames);
+	}
+	
+	// Start loading the given file of every hazard at once, however many hazards there are
+	// (in the order of the given map)
+	public Map<Hazard, Future<HazardGrid>> loadAll(Map<Hazard, String> fileNames)
+	{
+		Map<Hazard, Future<HazardGrid>> futures = new LinkedHashMap<Hazard, Future<HazardGrid>>();
+		
+		for (Map.Entry<Hazard, String> entry : fileNames.entrySet())
+		{
+			futures.put(entry.getKey(), load(entry.getValue()));
+		}
+		
+		return futures;
+	}
+	
+	// The cache used by this loader (null if none)
+	public GridCache cache()
+	{
+		return cache;
+	}
+	
+	// Run other per-hazard work (such as exporting) on the same threads
+	public <T> Future<T> submit(Callable<T> task)
+	{
+		return pool.submit(task);
+	}
+	
+	// Stop the threads once current work is done
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,149 @@
+package iansindustrialinstallation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import iansindustrialinstallation.IansIndustrialInstallation.Hazard;
+
+// Reads the hazards the program knows about from a config file, hazards.cfg in the working folder
+// (or another file set with -Diii.hazards=<file>), one hazard per line:
+//
+//   name, full name, acceptable (green) limit, concerning (yellow) limit, dangerous (red) limit[, file pattern]
+//
+// Blank lines and lines starting with # are skipped. The name is used in file names, so it is
+// letters and digits only. The file pattern is the name of the hazard's sweep files, with * standing
+// for the sweep (Ians_*_<name>.csv if left out). Without a config file, or if it has a mistake in it,
+// the four original hazards are used.
+public final class HazardRegistry
+{
+	// Config file read when -Diii.hazards is not set
+	public static final String DEFAULT_FILE = "hazards.cfg";
+	
+	// Sweep the default data file of each hazard belongs to
+	public static final String DEFAULT_SWEEP = "W7";
+	
+	// Most hazards there can be (CompositeGrid keeps the hazard of each cell in a byte)
+	public static final int MAX_HAZARDS = Byte.MAX_VALUE;
+	
+	// Hazards used when there is no config file
+	private static final String[] BUILT_IN =
+	{
+		"SO2, Sulphur Dioxide, 1, 10, 30",
+		"NO2, Nitrogen Dioxide, 1, 10, 30",
+		"CO, Carbon Monoxide, 1, 8, 25",
+		"Obstruct, Obstructions, 1, 2, 3"
+	};
+	
+	private static final Pattern NAME = Pattern.compile("[A-Za-z0-9]+");
+	
+	private HazardRegistry()
+	{
+	}
+	
+	// Hazards from the config file, or the built-in ones if there is none or it cannot be used
+	static Hazard[] load()
+	{
+		String configured = System.getProperty("iii.hazards");
+		File file = new File(configured != null ? configured : DEFAULT_FILE);
+		
+		if (!file.isFile())
+		{
+			if (configured != null)
+			{
+				System.err.println("ERROR!\tHazard config " + file + " not found");
+				DebugLog.error("ERROR!\tHazard config " + file + " not found, using the built-in hazards");
+			}
+			return parse(Arrays.asList(BUILT_IN), "built-in hazards");
+		}
+		
+		try
+		{
+			Hazard[] hazards = parse(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8), file.getName());
+			DebugLog.debug(() -> "Loaded " + hazards.length + " hazards from " + file);
+			return hazards;
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			System.err.println("ERROR!\t" + e.getMessage());
+			DebugLog.error("ERROR!\t" + e.getMessage() + ", using the built-in hazards");
+			return parse(Arrays.asList(BUILT_IN), "built-in hazards");
+		}
+	}
+	
+	// Hazards from the lines of a config file, in order. Throws IllegalArgumentException
+	// naming the line of the first mistake
+	static Hazard[] parse(List<String> lines, String source)
+	{
+		List<Hazard> hazards = new ArrayList<Hazard>();
+		Set<String> names = new HashSet<String>();
+		
+		for (int i = 0; i < lines.size(); i++)
+		{
+			String line = lines.get(i).trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			
+			String where = source + " line " + (i + 1);
+			String[] fields = line.split(",", -1);
+			if (fields.length != 5 && fields.length != 6)
+				throw new IllegalArgumentException(where + ": expected name, full name, 3 limits and an optional file pattern");
+			
+			String name = fields[0].trim();
+			if (!NAME.matcher(name).matches())
+				throw new IllegalArgumentException(where + ": hazard name \"" + name + "\" must be letters and digits only");
+			if (!names.add(name.toLowerCase()))
+				throw new IllegalArgumentException(where + ": hazard " + name + " is listed twice");
+			
+			int green = limit(fields[2], where);
+			int yellow = limit(fields[3], where);
+			int red = limit(fields[4], where);
+			if (green > yellow || yellow > red)
+				throw new IllegalArgumentException(where + ": limits must go up from acceptable to dangerous");
+			
+			String pattern = fields.length == 6 && !fields[5].trim().isEmpty() ? fields[5].trim() : "Ians_*_" + name + ".csv";
+			if (pattern.indexOf('*') != pattern.lastIndexOf('*'))
+				throw new IllegalArgumentException(where + ": file pattern " + pattern + " can only have one *");
+			
+			if (hazards.size() == MAX_HAZARDS)
+				throw new IllegalArgumentException(where + ": no more than " + MAX_HAZARDS + " hazards can be used");
+			
+			hazards.add(new Hazard(hazards.size(), name, fields[1].trim(), green, yellow, red, pattern));
+		}
+		
+		if (hazards.isEmpty())
+			throw new IllegalArgumentException(source + " lists no hazards");
+		
+		return hazards.toArray(new Hazard[hazards.size()]);
+	}
+	
+	private static int limit(String field, String where)
+	{
+		try
+		{
+			return Integer.parseInt(field.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException(where + ": limit \"" + field.trim() + "\" is not a whole number");
+		}
+	}
+	
+	// Regular expression of a file pattern, matching whole file names (not case sensitive)
+	// with the sweep (the part matched by *, or nothing if there is no *) as group 1
+	static Pattern filePattern(String pattern)
+	{
+		int star = pattern.indexOf('*');
+		if (star < 0)
+			return Pattern.compile(Pattern.quote(pattern) + "()", Pattern.CASE_INSENSITIVE);
+		
+		return Pattern.compile(Pattern.quote(pattern.substring(0, star)) + "(.+)" + Pattern.quote(pattern.substring(star + 1)), Pattern.CASE_INSENSITIVE);
+	}
+}
@@ -0,0 +1,260 @@
+package iansindustrialinstallation;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Summary of one hazard grid: lowest, highest and mean reading, percentiles,
+// how many cells fall between each of the hazard's limits, and how many are in each band.
+// Worked out with fork/join over blocks of rows, so large grids use every core.
+// https://docs.oracle.com/javase/tutorial/essential/concurrency/forkjoin.html
+public final class HazardStatistics
+{
+	// Percentiles worked out for every grid
+	public static final double[] PERCENTILES = { 50, 90, 95, 99 };
+	
+	// Ranges of the limit histogram, by the hazard's limits:
+	// below the green limit, green up to yellow, yellow up to red, and red or above
+	public static final String[] LIMIT_RANGES = { "Below acceptable", "Acceptable", "Concerning", "Dangerous" };
+	
+	// Rows are split up until a block has no more than this many cells
+	private static final int BLOCK_CELLS = 64 * 1024;
+	
+	// Readings spanning up to this many values are counted one by one for exact percentiles,
+	// anything wider is sorted instead
+	private static final int MAX_COUNTED_RANGE = 1 << 16;
+	
+	private final long cells;
+	private final int min;
+	private final int max;
+	private final double mean;
+	private final int[] percentiles;
+	private final long[] limitCounts;
+	private final long[] bandCounts;
+	
+	private HazardStatistics(long cells, int min, int max, double mean, int[] percentiles, long[] limitCounts, long[] bandCounts)
+	{
+		this.cells = cells;
+		this.min = min;
+		this.max = max;
+		this.mean = mean;
+		this.percentiles = percentiles;
+		this.limitCounts = limitCounts;
+		this.bandCounts = bandCounts;
+	}
+	
+	// some getters for the statistics
+	public long cells() { return cells; }
+	public int min() { return min; }
+	public int max() { return max; }
+	public double mean() { return mean; }
+	
+	// Reading at PERCENTILES[i] (nearest rank)
+	public int percentile(int i) { return percentiles[i]; }
+	
+	// Number of cells in LIMIT_RANGES[i]
+	public long limitCount(int i) { return limitCounts[i]; }
+	
+	// Number of cells in a band (HazardClassifier.WHITE to RED)
+	public long bandCount(int band) { return bandCounts[band]; }
+	
+	// Work out the statistics of a grid, given its hazard's limits and classifier
+	public static HazardStatistics compute(HazardGrid grid, int greenLimit, int yellowLimit, int redLimit, HazardClassifier classifier)
+	{
+		int[] values = grid.values();
+		int width = Math.max(1, grid.width());
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		
+		if (values.length == 0)
+		{
+			return new HazardStatistics(0, 0, 0, 0, new int[PERCENTILES.length], new long[LIMIT_RANGES.length], new long[HazardClassifier.BAND_COUNT]);
+		}
+		
+		// First pass: lowest, highest, total and the counts
+		int[] limits = { greenLimit, yellowLimit, redLimit };
+		Totals totals = pool.invoke(new TotalsTask(values, width, 0, grid.height(), limits, classifier));
+		
+		// Second pass: percentiles, by counting every reading if their range is small enough
+		int[] percentiles;
+		long range = (long) totals.max - totals.min + 1;
+		if (range <= MAX_COUNTED_RANGE)
+		{
+			// Blocks are kept big enough that their count arrays stay small next to the grid
+			int blockCells = (int) Math.max(BLOCK_CELLS, range * 8);
+			long[] counts = pool.invoke(new CountTask(values, width, 0, grid.height(), totals.min, (int) range, blockCells));
+			percentiles = percentilesFromCounts(counts, totals.min, values.length);
+		}
+		else
+		{
+			int[] sorted = values.clone();
+			Arrays.parallelSort(sorted);
+			percentiles = new int[PERCENTILES.length];
+			for (int i = 0; i < PERCENTILES.length; i++)
+			{
+				percentiles[i] = sorted[rank(PERCENTILES[i], sorted.length)];
+			}
+		}
+		
+		return new HazardStatistics(values.length, totals.min, totals.max, (double) totals.sum / values.length, percentiles, totals.limitCounts, totals.bandCounts);
+	}
+	
+	// Index (0-based) of the reading at a percentile of n sorted readings, by nearest rank
+	private static int rank(double percentile, long n)
+	{
+		return (int) Math.max(0, Math.min(n - 1, (long) Math.ceil(percentile / 100 * n) - 1));
+	}
+	
+	private static int[] percentilesFromCounts(long[] counts, int min, long n)
+	{
+		int[] result = new int[PERCENTILES.length];
+		long seen = 0;
+		int p = 0;
+		
+		for (int v = 0; v < counts.length && p < result.length; v++)
+		{
+			seen += counts[v];
+			while (p < result.length && seen > rank(PERCENTILES[p], n))
+			{
+				result[p++] = min + v;
+			}
+		}
+		
+		return result;
+	}
+	
+	// Results of the first pass over a block of rows
+	private static final class Totals
+	{
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		long sum = 0;
+		final long[] limitCounts = new long[LIMIT_RANGES.length];
+		final long[] bandCounts = new long[HazardClassifier.BAND_COUNT];
+		
+		void add(Totals other)
+		{
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+			sum += other.sum;
+			for (int i = 0; i < limitCounts.length; i++)
+			{
+				limitCounts[i] += other.limitCounts[i];
+			}
+			for (int i = 0; i < bandCounts.length; i++)
+			{
+				bandCounts[i] += other.bandCounts[i];
+			}
+		}
+	}
+	
+	private static final class TotalsTask extends RecursiveTask<Totals>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int[] values;
+		private final int width;
+		private final int fromRow;
+		private final int toRow;
+		private final int[] limits;
+		private final HazardClassifier classifier;
+		
+		TotalsTask(int[] values, int width, int fromRow, int toRow, int[] limits, HazardClassifier classifier)
+		{
+			this.values = values;
+			this.width = width;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+			this.limits = limits;
+			this.classifier = classifier;
+		}
+		
+		@Override
+		protected Totals compute()
+		{
+			// Split big blocks in half, working on one half while the other is free to be stolen
+			if ((long) (toRow - fromRow) * width > BLOCK_CELLS && toRow - fromRow > 1)
+			{
+				int middle = (fromRow + toRow) >>> 1;
+				TotalsTask top = new TotalsTask(values, width, fromRow, middle, limits, classifier);
+				top.fork();
+				Totals totals = new TotalsTask(values, width, middle, toRow, limits, classifier).compute();
+				totals.add(top.join());
+				return totals;
+			}
+			
+			Totals totals = new Totals();
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			long sum = 0;
+			int green = limits[0];
+			int yellow = limits[1];
+			int red = limits[2];
+			
+			for (int i = fromRow * width, end = toRow * width; i < end; i++)
+			{
+				int v = values[i];
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+				sum += v;
+				
+				totals.limitCounts[v < green ? 0 : v < yellow ? 1 : v < red ? 2 : 3]++;
+				totals.bandCounts[classifier.classify(v)]++;
+			}
+			
+			totals.min = min;
+			totals.max = max;
+			totals.sum = sum;
+			return totals;
+		}
+	}
+	
+	// Counts every reading of a block of rows, counts[v - min] being the number of cells holding v
+	private static final class CountTask extends RecursiveTask<long[]>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int[] values;
+		private final int width;
+		private final int fromRow;
+		private final int toRow;
+		private final int min;
+		private final int range;
+		private final int blockCells;
+		
+		CountTask(int[] values, int width, int fromRow, int toRow, int min, int range, int blockCells)
+		{
+			this.values = values;
+			this.width = width;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+			this.min = min;
+			this.range = range;
+			this.blockCells = blockCells;
+		}
+		
+		@Override
+		protected long[] compute()
+		{
+			if ((long) (toRow - fromRow) * width > blockCells && toRow - fromRow > 1)
+			{
+				int middle = (fromRow + toRow) >>> 1;
+				CountTask top = new CountTask(values, width, fromRow, middle, min, range, blockCells);
+				top.fork();
+				long[] counts = new CountTask(values, width, middle, toRow, min, range, blockCells).compute();
+				long[] other = top.join();
+				for (int i = 0; i < counts.length; i++)
+				{
+					counts[i] += other[i];
+				}
+				return counts;
+			}
+			
+			long[] counts = new long[range];
+			for (int i = fromRow * width, end = toRow * width; i < end; i++)
+			{
+				counts[values[i] - min]++;
+			}
+			return counts;
+		}
+	}
+}
@@ -0,0 +1,594 @@
+package iansindustrialinstallation;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.List;
+
+// A single component that paints the whole colour-coded data grid,
+// instead of one TextField per cell.
+// Each cell holds a colour class (index into the palette, higher = more severe),
+// kept in an indexed BufferedImage with one pixel per cell.
+// The canvas is a viewport onto the grid: drag to pan, mouse wheel to zoom,
+// double-click to fit the whole grid, shift-drag (or right-drag) to select a rectangle of cells.
+// Only the visible cells are drawn, and when cells get smaller than a pixel,
+// a coarser level is drawn instead where each pixel holds the most severe class
+// of a 2x2, 4x4, 8x8... block of cells.
+// Outlines can be drawn over areas of cells to highlight them (setHighlights).
+// A CellHoverListener is told which cell the mouse is over, by its grid index,
+// and a CellSelectionListener which rectangle of cells is selected.
+public class HeatmapCanvas extends Canvas
+{
+	private static final long serialVersionUID = 1L;
+	
+	// Listener told when the mouse moves onto a different cell
+	public interface CellHoverListener
+	{
+		// index is y * columns + x of the cell now under the mouse, or -1 when it leaves the grid
+		void cellHovered(int index);
+	}
+	
+	// Listener told when the selected rectangle changes, as it is dragged out
+	public interface CellSelectionListener
+	{
+		// area is in cells (x, y of the top-left cell, width and height), or null when the selection is cleared
+		void cellsSelected(Rectangle area);
+	}
+	
+	// Size of each cell on screen at 100% zoom (same spacing as the old TextField grid)
+	public static final int CELL_WIDTH = 30;
+	public static final int CELL_HEIGHT = 20;
+	
+	// Zoom limits, as a scale of the 100% cell size
+	private static final double MAX_SCALE = 4.0;
+	private static final double MIN_CELL_PIXELS = 1.0 / 256;
+	
+	// Zoom change per mouse wheel notch
+	private static final double WHEEL_ZOOM = 1.25;
+	
+	// Grid lines are only drawn when cells are at least this big
+	private static final int MIN_GRID_LINE_CELL = 6;
+	
+	private static final Color GRID_LINE_COLOR = new Color(160, 160, 160);
+	
+	// Highlight outlines are drawn this many pixels thick
+	private static final int HIGHLIGHT_THICKNESS = 2;
+	
+	// Highlights smaller than this on screen (in both directions) are not drawn
+	private static final int MIN_HIGHLIGHT_PIXELS = 4;
+	
+	private static final Color SELECTION_COLOR = new Color(0, 102, 204);
+	
+	private final IndexColorModel palette;
+	
+	private int columns;
+	private int rows;
+	
+	// levels.get(0) has one pixel per cell, each further level halves both sides
+	// and keeps the highest class of the 2x2 pixels below it
+	private final List<BufferedImage> levels = new ArrayList<BufferedImage>();
+	
+	// Backing array of each level, one byte per pixel in row-major order, fetched once when the level is made
+	// (asking the raster for it again on every pixel is slow)
+	private final List<byte[]> levelPixels = new ArrayList<byte[]>();
+	
+	// Bands whose classes are shown (null before any are set)
+	private BandGrid bands = null;
+	
+	// View: scale of the cell size, and the grid coordinate (in cells) at the top-left corner
+	private double scale = 1.0;
+	private double viewX = 0;
+	private double viewY = 0;
+	private boolean fitPending = true;
+	
+	// Areas of cells outlined over the grid (x,y,width,height in cells), and the colour of each
+	private Rectangle[] highlights = new Rectangle[0];
+	private Color[] highlightColors = new Color[0];
+	
+	// Where the mouse was last seen while dragging (for panning)
+	private int dragX, dragY;
+	
+	// Selected cells (null if none), the cell the selection was started from, and who to tell about it
+	private Rectangle selection = null;
+	private boolean selecting = false;
+	private int selectX, selectY;
+	private CellSelectionListener selectionListener;
+	
+	// Cell under the mouse (-1 if none), and who to tell when it changes
+	private int hoverIndex = -1;
+	private CellHoverListener hoverListener;
+	
+	public HeatmapCanvas(int columns, int rows, Color[] classColors)
+	{
+		// Build an indexed colour model from the class colours
+		byte[] r = new byte[classColors.length];
+		byte[] g = new byte[classColors.length];
+		byte[] b = new byte[classColors.length];
+		for (int i = 0; i < classColors.length; i++)
+		{
+			r[i] = (byte) classColors[i].getRed();
+			g[i] = (byte) classColors[i].getGreen();
+			b[i] = (byte) classColors[i].getBlue();
+		}
+		palette = new IndexColorModel(8, classColors.length, r, g, b);
+		
+		setGridSize(columns, rows);
+		
+		// Mouse controls for the viewport
+		MouseAdapter controls = new MouseAdapter()
+		{
+			@Override
+			public void mousePressed(MouseEvent e)
+			{
+				dragX = e.getX();
+				dragY = e.getY();
+				
+				// Shift or the right button starts a selection instead of panning
+				selecting = (e.isShiftDown() || e.getButton() == MouseEvent.BUTTON3) && columns > 0 && rows > 0;
+				if (selecting)
+				{
+					selectX = clampedColumn(e.getX());
+					selectY = clampedRow(e.getY());
+					selectTo(e.getX(), e.getY());
+				}
+			}
+			
+			@Override
+			public void mouseReleased(MouseEvent e)
+			{
+				selecting = false;
+			}
+			
+			@Override
+			public void mouseDragged(MouseEvent e)
+			{
+				if (selecting)
+				{
+					selectTo(e.getX(), e.getY());
+				}
+				else
+				{
+					panBy(e.getX() - dragX, e.getY() - dragY);
+				}
+				dragX = e.getX();
+				dragY = e.getY();
+				hover(cellAt(e.getX(), e.getY()));
+			}
+			
+			@Override
+			public void mouseMoved(MouseEvent e)
+			{
+				hover(cellAt(e.getX(), e.getY()));
+			}
+			
+			@Override
+			public void mouseExited(MouseEvent e)
+			{
+				hover(-1);
+			}
+			
+			@Override
+			public void mouseClicked(MouseEvent e)
+			{
+				if (e.getClickCount() == 2)
+				{
+					zoomToFit();
+				}
+			}
+			
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e)
+			{
+				zoomAt(e.getX(), e.getY(), Math.pow(WHEEL_ZOOM, -e.getPreciseWheelRotation()));
+				hover(cellAt(e.getX(), e.getY()));
+			}
+		};
+		addMouseListener(controls);
+		addMouseMotionListener(controls);
+		addMouseWheelListener(controls);
+	}
+	
+	// Change the number of cells shown (all cells start at class 0),
+	// and fit the whole grid on screen
+	public void setGridSize(int columns, int rows)
+	{
+		this.columns = columns;
+		this.rows = rows;
+		
+		levels.clear();
+		levelPixels.clear();
+		addLevel(columns, rows);
+		bands = null;
+		
+		hoverIndex = -1;
+		highlights = new Rectangle[0];
+		highlightColors = new Color[0];
+		select(null);
+		fitPending = true;
+		repaint();
+	}
+	
+	public int columns() { return columns; }
+	public int rows() { return rows; }
+	public BandGrid bands() { return bands; }
+	
+	// Set the classes of all cells at once from the bands of a grid (a band is its class)
+	public void setCells(BandGrid bands)
+	{
+		byte[] pixels = pixels(0);
+		for (int y = 0; y < rows; y++)
+		{
+			bands.row(y, pixels, y * columns);
+		}
+		this.bands = bands;
+		
+		// Coarser levels are rebuilt from the new cells when next needed
+		while (levels.size() > 1)
+		{
+			levels.remove(levels.size() - 1);
+			levelPixels.remove(levelPixels.size() - 1);
+		}
+		
+		repaint();
+	}
+	
+	// Set the classes of rows y0 to y1 - 1 from the bands of a grid of the same size,
+	// updating the coarser levels already built and repainting only those rows
+	public void setRows(BandGrid bands, int y0, int y1)
+	{
+		byte[] pixels = pixels(0);
+		for (int y = y0; y < y1; y++)
+		{
+			bands.row(y, pixels, y * columns);
+		}
+		this.bands = bands;
+		
+		for (int k = 1; k < levels.size(); k++)
+		{
+			reduce(k, y0 >> k, (y1 - 1) >> k);
+		}
+		
+		int top = screenY(y0);
+		repaint(0, top - 1, getWidth(), screenY(y1) - top + 2);
+	}
+	
+	// Outline the given areas of cells (in cells, not pixels), each in its own colour,
+	// replacing any outlined before
+	public void setHighlights(Rectangle[] areas, Color[] colors)
+	{
+		highlights = areas.clone();
+		highlightColors = colors.clone();
+		repaint();
+	}
+	
+	public void setCellHoverListener(CellHoverListener listener)
+	{
+		hoverListener = listener;
+	}
+	
+	public void setCellSelectionListener(CellSelectionListener listener)
+	{
+		selectionListener = listener;
+	}
+	
+	// Selected rectangle of cells, or null if none
+	public Rectangle selection()
+	{
+		return selection == null ? null : new Rectangle(selection);
+	}
+	
+	// Select a rectangle of cells (null to clear it), telling the listener if it changed
+	public void select(Rectangle area)
+	{
+		Rectangle clipped = area == null ? null : area.intersection(new Rectangle(0, 0, columns, rows));
+		if (clipped != null && clipped.isEmpty())
+			clipped = null;
+		
+		if (clipped == null ? selection == null : clipped.equals(selection))
+			return;
+		
+		selection = clipped;
+		repaint();
+		if (selectionListener != null)
+		{
+			selectionListener.cellsSelected(selection());
+		}
+	}
+	
+	// Stretch the selection from the cell it started at to the cell under the given pixel
+	private void selectTo(int px, int py)
+	{
+		int x = clampedColumn(px);
+		int y = clampedRow(py);
+		select(new Rectangle(Math.min(x, selectX), Math.min(y, selectY), Math.abs(x - selectX) + 1, Math.abs(y - selectY) + 1));
+	}
+	
+	// Column and row under a pixel, kept inside the grid
+	private int clampedColumn(int px)
+	{
+		return Math.max(0, Math.min(columns - 1, (int) Math.floor(viewX + px / cellWidth())));
+	}
+	
+	private int clampedRow(int py)
+	{
+		return Math.max(0, Math.min(rows - 1, (int) Math.floor(viewY + py / cellHeight())));
+	}
+	
+	// Index of the cell under the mouse, or -1 if none
+	public int hoveredCell()
+	{
+		return hoverIndex;
+	}
+	
+	// Tell the listener about the cell under the mouse, only when it changes.
+	// Runs on every mouse move, so does nothing else
+	private void hover(int index)
+	{
+		if (index != hoverIndex)
+		{
+			hoverIndex = index;
+			if (hoverListener != null)
+			{
+				hoverListener.cellHovered(index);
+			}
+		}
+	}
+	
+	// Hit-test: index (y * columns + x) of the cell under the given pixel, or -1 if none
+	public int cellAt(int px, int py)
+	{
+		int x = (int) Math.floor(viewX + px / cellWidth());
+		int y = (int) Math.floor(viewY + py / cellHeight());
+		
+		if (x < 0 || y < 0 || x >= columns || y >= rows)
+			return -1;
+		
+		return y * columns + x;
+	}
+	
+	// Zoom so the whole grid fits in the canvas (never past 100%)
+	public void zoomToFit()
+	{
+		if (getWidth() <= 0 || getHeight() <= 0 || columns == 0 || rows == 0)
+		{
+			fitPending = true;
+			return;
+		}
+		
+		scale = Math.min(1.0, Math.min((double) getWidth() / (columns * CELL_WIDTH), (double) getHeight() / (rows * CELL_HEIGHT)));
+		viewX = 0;
+		viewY = 0;
+		fitPending = false;
+		repaint();
+	}
+	
+	// Zoom by the given factor, keeping the cell under (px,py) where it is
+	public void zoomAt(int px, int py, double factor)
+	{
+		double gx = viewX + px / cellWidth();
+		double gy = viewY + py / cellHeight();
+		
+		double minScale = MIN_CELL_PIXELS / Math.min(CELL_WIDTH, CELL_HEIGHT);
+		scale = Math.max(minScale, Math.min(MAX_SCALE, scale * factor));
+		
+		viewX = gx - px / cellWidth();
+		viewY = gy - py / cellHeight();
+		repaint();
+	}
+	
+	// Move the view by the given number of pixels
+	public void panBy(int dx, int dy)
+	{
+		viewX -= dx / cellWidth();
+		viewY -= dy / cellHeight();
+		repaint();
+	}
+	
+	private double cellWidth()
+	{
+		return CELL_WIDTH * scale;
+	}
+	
+	private double cellHeight()
+	{
+		return CELL_HEIGHT * scale;
+	}
+	
+	@Override
+	public Dimension getPreferredSize()
+	{
+		return new Dimension(columns * CELL_WIDTH + 1, rows * CELL_HEIGHT + 1);
+	}
+	
+	// Paint straight over the old contents, skipping the clear (stops flicker)
+	@Override
+	public void update(Graphics g)
+	{
+		paint(g);
+	}
+	
+	@Override
+	public void paint(Graphics g)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			paintCells(g);
+		}
+		finally
+		{
+			Metrics.RENDER.record(start);
+		}
+	}
+	
+	private void paintCells(Graphics g)
+	{
+		if (fitPending)
+		{
+			zoomToFit();
+		}
+		
+		double cw = cellWidth();
+		double ch = cellHeight();
+		
+		Rectangle clip = g.getClipBounds();
+		if (clip == null)
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		
+		// Clear the area being repainted
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+		
+		// Work out which cells fall inside the area being repainted
+		int x0 = Math.max(0, (int) Math.floor(viewX + clip.x / cw));
+		int y0 = Math.max(0, (int) Math.floor(viewY + clip.y / ch));
+		int x1 = Math.min(columns, (int) Math.ceil(viewX + (clip.x + clip.width) / cw));
+		int y1 = Math.min(rows, (int) Math.ceil(viewY + (clip.y + clip.height) / ch));
+		
+		if (x0 >= x1 || y0 >= y1)
+			return;
+		
+		// Pick the finest level whose blocks are at least a pixel on screen
+		int k = 0;
+		while ((1 << k) * Math.min(cw, ch) < 1 && ((columns >> k) > 1 || (rows >> k) > 1))
+		{
+			k++;
+		}
+		BufferedImage level = level(k);
+		
+		// Visible blocks on that level, and where they land on screen
+		int sx0 = x0 >> k;
+		int sy0 = y0 >> k;
+		int sx1 = Math.min(level.getWidth(), ((x1 - 1) >> k) + 1);
+		int sy1 = Math.min(level.getHeight(), ((y1 - 1) >> k) + 1);
+		
+		int dx0 = screenX(Math.min(columns, sx0 << k));
+		int dy0 = screenY(Math.min(rows, sy0 << k));
+		int dx1 = screenX(Math.min(columns, sx1 << k));
+		int dy1 = screenY(Math.min(rows, sy1 << k));
+		
+		// Scale the visible part of the level up to screen size in one call
+		g.drawImage(level, dx0, dy0, dx1, dy1, sx0, sy0, sx1, sy1, null);
+		
+		// Draw the lines between the visible cells when they are big enough to see
+		if (cw >= MIN_GRID_LINE_CELL && ch >= MIN_GRID_LINE_CELL)
+		{
+			g.setColor(GRID_LINE_COLOR);
+			for (int x = x0; x <= x1; x++)
+			{
+				g.drawLine(screenX(x), screenY(y0), screenX(x), screenY(y1));
+			}
+			for (int y = y0; y <= y1; y++)
+			{
+				g.drawLine(screenX(x0), screenY(y), screenX(x1), screenY(y));
+			}
+		}
+		
+		// Outline the highlighted areas that reach into the repainted cells
+		for (int i = 0; i < highlights.length; i++)
+		{
+			Rectangle area = highlights[i];
+			if (area.x >= x1 || area.y >= y1 || area.x + area.width <= x0 || area.y + area.height <= y0)
+				continue;
+			
+			int left = screenX(area.x);
+			int top = screenY(area.y);
+			int right = screenX(area.x + area.width);
+			int bottom = screenY(area.y + area.height);
+			
+			// Too small to tell apart from the cells themselves
+			if (right - left < MIN_HIGHLIGHT_PIXELS && bottom - top < MIN_HIGHLIGHT_PIXELS)
+				continue;
+			
+			g.setColor(highlightColors[i]);
+			outline(g, left, top, right, bottom);
+		}
+		
+		// Outline the selection however small it is on screen
+		if (selection != null)
+		{
+			g.setColor(SELECTION_COLOR);
+			outline(g, screenX(selection.x), screenY(selection.y), screenX(selection.x + selection.width), screenY(selection.y + selection.height));
+		}
+	}
+	
+	// Draw a thick outline just inside the given screen edges
+	private void outline(Graphics g, int left, int top, int right, int bottom)
+	{
+		for (int t = 0; t < HIGHLIGHT_THICKNESS; t++)
+		{
+			g.drawRect(left + t, top + t, Math.max(0, right - left - 1 - 2 * t), Math.max(0, bottom - top - 1 - 2 * t));
+		}
+	}
+	
+	// Screen position of the left edge of column x
+	private int screenX(int x)
+	{
+		return (int) Math.round((x - viewX) * cellWidth());
+	}
+	
+	// Screen position of the top edge of row y
+	private int screenY(int y)
+	{
+		return (int) Math.round((y - viewY) * cellHeight());
+	}
+	
+	// Level k, building it (and any missing levels below it) from the cells if needed
+	private BufferedImage level(int k)
+	{
+		while (levels.size() <= k)
+		{
+			int next = levels.size();
+			BufferedImage below = levels.get(next - 1);
+			addLevel((below.getWidth() + 1) / 2, (below.getHeight() + 1) / 2);
+			reduce(next, 0, levels.get(next).getHeight() - 1);
+		}
+		return levels.get(k);
+	}
+	
+	// Set every pixel of rows y0 to y1 (inclusive) of level k to the highest class of the 2x2 pixels below it
+	private void reduce(int k, int y0, int y1)
+	{
+		byte[] src = pixels(k - 1);
+		byte[] dst = pixels(k);
+		int w = levels.get(k - 1).getWidth();
+		int h = levels.get(k - 1).getHeight();
+		int dw = levels.get(k).getWidth();
+		
+		for (int y = y0; y <= y1; y++)
+		{
+			int top = y * 2 * w;
+			int bottom = Math.min(y * 2 + 1, h - 1) * w;
+			for (int x = 0; x < dw; x++)
+			{
+				int bx = x * 2;
+				int bx2 = Math.min(bx + 1, w - 1);
+				int max = Math.max(Math.max(src[top + bx], src[top + bx2]), Math.max(src[bottom + bx], src[bottom + bx2]));
+				dst[y * dw + x] = (byte) max;
+			}
+		}
+	}
+	
+	// Add a level of the given size, all class 0
+	private void addLevel(int w, int h)
+	{
+		BufferedImage level = new BufferedImage(Math.max(1, w), Math.max(1, h), BufferedImage.TYPE_BYTE_INDEXED, palette);
+		levels.add(level);
+		levelPixels.add(((DataBufferByte) level.getRaster().getDataBuffer()).getData());
+	}
+	
+	// Backing array of level k, one byte per pixel in row-major order
+	private byte[] pixels(int k)
+	{
+		return levelPixels.get(k);
+	}
+}
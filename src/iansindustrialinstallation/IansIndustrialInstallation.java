@@ -8,24 +8,30 @@ import java.awt.image.*;
 import java.awt.event.AWTEventListener;
 import java.awt.event.ActionEvent;
 import java.awt.event.WindowEvent;
-import java.awt.event.MouseEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowListener;
-import java.awt.event.MouseListener;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.PrintWriter;
-import java.io.RandomAccessFile;
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.imageio.ImageIO;
 
 import javax.swing.SpringLayout;
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 
 
 
@@ -35,55 +41,147 @@ import javax.swing.JOptionPane;
  *
  */
 // Define class extending Frame and implementing listeners
-public class IansIndustrialInstallation extends Frame implements WindowListener, ActionListener, MouseListener, AWTEventListener
+public class IansIndustrialInstallation extends Frame implements WindowListener, ActionListener, HeatmapCanvas.CellHoverListener, HeatmapCanvas.CellSelectionListener, SweepWatcher.Listener, AWTEventListener
 {
 	int totalX = 30;	// default X value for TextField Grid
 	int totalY = 30;	// default Y value for TextField Grid
 	
-	TextField[][] contents = new TextField[totalX][totalY];	// default array for use when making TextField grid
-	String[][] data = new String[totalX][totalY+3];	// default array for storing all data from .csv file 
+	HeatmapCanvas heatmap;	// color-coded grid, painted as one component
+	HazardGrid data = null;	// grid model holding all data from the currently loaded .csv file
+	RegionIndex regions = null;	// index of data, for the sum, mean, max and min of selected cells
+	Hazard currentHazard = null;	// hazard whose default file is on screen (null if none, or a manually selected file)
+	CompositeGrid composite = null;	// worst case of all hazards, when that is what is on screen
+	
+	// Grid models of every hazard's default file, as last loaded all together
+	Map<Hazard, HazardGrid> grids = new LinkedHashMap<Hazard, HazardGrid>();
+	
+	// Latest sweep file of every hazard, starting with the default file names.
+	// Only touched on the AWT event thread once the window is up
+	Map<Hazard, String> hazardFiles = new LinkedHashMap<Hazard, String>();
+	
+	// Watches the data directory, so new sweep files show up without clicking anything
+	SweepWatcher watcher = null;
+	
+	// Flag for whether new sweep files are exported as soon as they are loaded (-autoexport)
+	boolean autoExport = false;
+	
+	// Every sweep loaded so far, per hazard, kept in the "history" folder (opened when first needed)
+	final Map<Hazard, SweepHistory> history = new HashMap<Hazard, SweepHistory>();
+	
+	// Parsed and classified grids kept in memory, so switching hazards or exporting
+	// only reads files that changed on disk (budget set with -Diii.cache.bytes)
+	GridCache cache = GridCache.fromProperties();
+	
+	// Background threads used to load (and export) the hazard files at the same time
+	HazardGridLoader loader = new HazardGridLoader(Runtime.getRuntime().availableProcessors(), cache);
+	
+	// Background tasks currently running (null when idle), so they can be cancelled.
+	// Only touched on the AWT event thread
+	ReloadTask reloadTask = null;
+	CompositeTask compositeTask = null;
+	ExportTask exportTask = null;
 	
 	// Declare most of the controls used by program
-	Label lblAddress, lblDate, lblTime, lblHazardLvl, lblHazardName, lblLevel, lblExport, lblLegend, lblAccept, lblConcern, lblDanger;
-	Button btnSO2, btnNO2, btnCO, btnObstruct, btnExport, btnClose;
+	Label lblAddress, lblDate, lblTime, lblHazardLvl, lblHazardName, lblLevel, lblExport, lblLegend, lblAccept, lblConcern, lblDanger, lblPeak, lblPercentiles, lblZones, lblSelection, lblSelectionRange;
+	Button[] hazardButtons;	// one per hazard, in Hazard.values() order
+	Button btnComposite, btnExport, btnClose;
 	TextField txtValue, txtAccept, txtConcern, txtDanger;
 	
-	// Flag for debug logging
-	static boolean DEBUG_LOGGING = false;
+	// Outline colors of danger zones, by their worst band (darker than the band colors)
+	static final Color YELLOW_ZONE_COLOR = new Color(204,153,0);
+	static final Color RED_ZONE_COLOR = new Color(204,0,0);
+	
+	// Colors used for each band (HazardClassifier.WHITE to RED), shared by the grid and the legend
+	static final Color[] BOX_COLORS =
+	{
+		new Color(255,255,255),	// White
+		new Color(153,255,153),	// Light green
+		new Color(255,255,153),	// Light yellow
+		new Color(255,153,153)	// Light red
+	};
 	
 	// Flag for "Manual Mode",which is whether or not data files are loaded by default name
 	// or if user manually selects the file to load
 	boolean manualMode = false;
 	
 	// https://docs.oracle.com/javase/tutorial/java/javaOO/enum.html
-	// An enumerator to store all our data regarding the four hazards
-	public enum Hazard
+	// Stores all our data regarding each hazard. Used like an enum, but the hazards come from
+	// hazards.cfg (see HazardRegistry) so any number of them can be monitored without changing the program
+	public static final class Hazard
 	{
-		// Format is Name, Acceptable (green) limit, Concerning (yellow) limit, Dangerous (red) limit
-		SO2 ( "Sulphur Dioxide", 1, 10, 30 ),
-		NO2 ( "Nitrogen Dioxide", 1, 10, 30 ),
-		CO ( "Carbon Monoxide", 1, 8, 25 ),
-		Obstruct ( "Obstructions", 1, 2, 3 );
+		// Every hazard, in the order they are configured
+		private static final Hazard[] VALUES = HazardRegistry.load();
 		
+		private final int ordinal;
+		private final String name;
 		private final String hazard_name;
 		private final int green_limit;
 		private final int yellow_limit;
 		private final int red_limit;
+		private final String file_pattern;
+		private final Pattern file_regex;
+		private final HazardClassifier classifier;	// band lookup worked out once from the limits
 		
-		// constructor for Hazard enum
-		Hazard (String name, int green_limit, int yellow_limit, int red_limit)
+		// constructor for Hazard, format is Name, Full name, Acceptable (green) limit,
+		// Concerning (yellow) limit, Dangerous (red) limit, sweep file name with * for the sweep
+		Hazard (int ordinal, String name, String hazard_name, int green_limit, int yellow_limit, int red_limit, String file_pattern)
 		{
-			this.hazard_name = name;
+			this.ordinal = ordinal;
+			this.name = name;
+			this.hazard_name = hazard_name;
 			this.green_limit = green_limit;
 			this.yellow_limit = yellow_limit;
 			this.red_limit = red_limit;
+			this.file_pattern = file_pattern;
+			this.file_regex = HazardRegistry.filePattern(file_pattern);
+			this.classifier = new HazardClassifier(yellow_limit, red_limit);
+		}
+		
+		// Every hazard, in the order they are configured (like an enum's values())
+		public static Hazard[] values() { return VALUES.clone(); }
+		
+		// Hazard with the given name, not case sensitive (like an enum's valueOf())
+		public static Hazard valueOf(String name)
+		{
+			for (Hazard hazard : VALUES)
+			{
+				if (hazard.name.equalsIgnoreCase(name))
+					return hazard;
+			}
+			throw new IllegalArgumentException("No hazard named " + name);
 		}
 		
-		// some getters for the enum contents
+		// some getters for the hazard contents
+		public int ordinal() { return ordinal; }
+		public String name() { return name; }
 		private String hazard_name() { return hazard_name; }
 		private int green_limit() { return green_limit; }
 		private int yellow_limit() { return yellow_limit; }
 		private int red_limit() { return red_limit; }
+		HazardClassifier classifier() { return classifier; }
+		
+		@Override
+		public String toString() { return name; }
+		
+		// Name of this hazard's sweep file of the given sweep
+		String fileNameFor(String sweep)
+		{
+			return file_pattern.replace("*", sweep);
+		}
+		
+		// Sweep a file of this hazard belongs to ("" if its pattern has no sweep in it),
+		// or null if the file is not one of this hazard's
+		String sweepOf(String fileName)
+		{
+			Matcher m = file_regex.matcher(fileName);
+			return m.matches() ? m.group(1) : null;
+		}
+		
+		// Statistics of a grid of this hazard's readings, against its limits
+		HazardStatistics statistics(HazardGrid grid)
+		{
+			return HazardStatistics.compute(grid, green_limit, yellow_limit, red_limit, classifier);
+		}
 	}
 
 	/**
@@ -91,6 +189,17 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 	 */
 	public static void main(String[] args)
 	{
+		// Publish timings of loading, rendering and exporting (see Metrics)
+		Metrics.startFromProperties();
+		
+		// Batch mode (-batch) exports sweep files without opening a window.
+		// This class is a Frame, so AWT has already been set up by now: for a truly headless run
+		// start BatchExport as the main class instead (or pass -Djava.awt.headless=true)
+		if (BatchExport.isRequested(args))
+		{
+			System.exit(BatchExport.run(args));
+		}
+		
 		// Instantiate program
 		IansIndustrialInstallation program = new IansIndustrialInstallation();
 		
@@ -101,19 +210,20 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 			{
 			// Debug Mode-1, logs things to file, appending to existing log file
 			case "-d1":
-				DEBUG_LOGGING = true;
+				EnableDebugLog(true);
 				DebugPrintln("Debug Logging Mode-1 Enabled. (Append to log)");
 				break;
 				
 			// Debug Mode-2,logs things to file, but deletes old log and creates new one
 			case "-d2":
 				// http://www.mkyong.com/java/how-to-delete-file-in-java/
-				DEBUG_LOGGING = true;
-				
 				File log = new File("DEBUG.LOG");
 				
-				// Try to delete old DEBUG.LOG file first if -d2 is selected
-				if (log.delete())
+				// Try to delete old DEBUG.LOG file first if -d2 is selected,
+				// saying so once the new log is open so it is the first line in it
+				boolean deleted = log.delete();
+				EnableDebugLog(false);
+				if (deleted)
 				{
 					DebugPrintln(log.getName() + " deleted!");
 				}
@@ -132,6 +242,13 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 		{
 			DebugPrintln("No program arguments found, this should not be an issue. Continuing with program.");
 		}
+		
+		// Export new sweep files as soon as they arrive
+		if (Arrays.asList(args).contains("-autoexport"))
+		{
+			program.autoExport = true;
+			DebugPrintln("Auto Export Enabled. New sweep files are exported when loaded.");
+		}
 
 		// call run method
 		program.run();
@@ -144,32 +261,71 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 	{
 		DebugPrintln("IAN'S INDUSTRIAL INSTALLATION APPLICATION STARTED!");
 		
-		GetXYFromFile("Ians_W7_SO2.csv");
+		for (Hazard hazard : Hazard.values())
+		{
+			hazardFiles.put(hazard, HazardGridLoader.fileNameFor(hazard));
+		}
+		
+		// Load every default hazard file at once,
+		// then take the X and Y counts from the data of the first one
+		grids = LoadAllHazards(hazardFiles);
+		HazardGrid first = grids.get(Hazard.values()[0]);
+		if (first != null)
+		{
+			totalX = first.width();
+			totalY = first.height();
+		}
 		
 		// Set bounds for the program frame/window
 		int boundsX = (totalX * 30) + 200;
 		int boundsY = (totalY * 20) + 120;
 		
+		// If they are larger than the screen, shrink them to fit
+		// (the grid can be panned and zoomed to see the rest)
+		Dimension screen = getToolkit().getScreenSize();
+		if (boundsX > screen.width - 20)
+			boundsX = screen.width - 20;
+		
+		if (boundsY > screen.height - 20)
+			boundsY = screen.height - 20;
+		
 		// If they are below certain size (too small to fit all of program),
 		// set them to a predefined minimum
 		if (boundsX < 800)
 			boundsX = 800;
 		
-		if (boundsY < 480)
-			boundsY = 480;
+		if (boundsY < 580)
+			boundsY = 580;
 		
 		// Setup the frame
 		setBounds(10, 10, boundsX, boundsY);
         setTitle("Ian's Industrial Installation");
         this.addWindowListener(this);
         this.getToolkit().addAWTEventListener(this, AWTEvent.KEY_EVENT_MASK);
-        setResizable(false);
+        setResizable(true);
         setFocusable(true);
         
         initLayout();
         
         // Display frame on screen
         setVisible(true);
+        
+        StartWatching();
+	}
+	
+	// Start watching the data directory for new sweep files (sweepLoaded is called with each one)
+	private void StartWatching()
+	{
+		try
+		{
+			watcher = SweepWatcher.fromProperties(Paths.get("."), loader, this);
+			watcher.start();
+		}
+		catch (Exception e)
+		{
+			System.err.println("ERROR!\tUnable to watch for new sweep files: " + e.getMessage());
+			DebugPrintln("ERROR!\tUnable to watch for new sweep files: " + e.getMessage());
+		}
 	}
 
 	//  Init some layout stuff
@@ -204,20 +360,53 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 		lblLevel = LocateALabel(layout, lblLevel, "Recorded Level:", 10, 410);
 		lblHazardLvl = LocateALabel(layout, lblHazardLvl, "Hazard Levels  ", 25, 40);
 		lblHazardName = LocateALabel(layout, lblHazardName, "(Hazard name)             ", 25, 60);
+		lblPeak = LocateALabel(layout, lblPeak, "Peak:          Mean:          ", 10, 440);
+		lblPercentiles = LocateALabel(layout, lblPercentiles, "Median:        95th:          ", 10, 460);
+		lblZones = LocateALabel(layout, lblZones, "Danger zones:                 ", 10, 480);
+		lblSelection = LocateALabel(layout, lblSelection, "Shift-drag to select cells    ", 10, 500);
+		lblSelectionRange = LocateALabel(layout, lblSelectionRange, "                              ", 10, 520);
 	}
 	
 	private void AddButtons(SpringLayout layout)
 	{
 		// Add buttons to layout
-		btnSO2 = LocateAButton(layout, btnSO2, Hazard.SO2.hazard_name(), 10, 200, 150, 25);
-		btnNO2 = LocateAButton(layout, btnNO2, Hazard.NO2.hazard_name(), 10, 230, 150, 25);
-		btnCO = LocateAButton(layout, btnCO, Hazard.CO.hazard_name(), 10, 260, 150, 25);
-		btnObstruct = LocateAButton(layout, btnObstruct, Hazard.Obstruct.hazard_name(), 10, 290, 150, 25);
+		AddHazardButtons(layout);
+		btnComposite = LocateAButton(layout, btnComposite, "Worst of all hazards", 10, 320, 150, 25);
 		
-		btnExport = LocateAButton(layout, btnExport, "Export .RAF .DAT .RPT", 10, 350, 150, 25);
+		btnExport = LocateAButton(layout, btnExport, "Export .RAF .DAT .RPT .SUM .ZON", 10, 350, 150, 25);
 		btnClose = LocateAButton(layout, btnClose, "Exit Program", 10, 380, 150, 25);
 	}
 	
+	// Adds a button for every hazard, in a panel that shows four of them and scrolls to the rest
+	private void AddHazardButtons(SpringLayout layout)
+	{
+		Hazard[] hazards = Hazard.values();
+		Panel buttons = new Panel(new GridLayout(0, 1, 0, 5));
+		hazardButtons = new Button[hazards.length];
+		
+		for (Hazard hazard : hazards)
+		{
+			Button button = new Button(hazard.hazard_name());
+			button.setPreferredSize(new Dimension(150, 25));
+			button.addActionListener(this);
+			buttons.add(button);
+			hazardButtons[hazard.ordinal()] = button;
+		}
+		
+		// Four fit in the space the fixed buttons used to take, any more scroll
+		Component area = buttons;
+		if (hazards.length > 4)
+		{
+			ScrollPane pane = new ScrollPane(ScrollPane.SCROLLBARS_AS_NEEDED);
+			pane.add(buttons);
+			pane.setPreferredSize(new Dimension(175, 115));
+			area = pane;
+		}
+		add(area);
+		layout.putConstraint(SpringLayout.WEST, area, 10, SpringLayout.WEST, this);
+		layout.putConstraint(SpringLayout.NORTH, area, 200, SpringLayout.NORTH, this);
+	}
+	
 	private void AddLegend(SpringLayout layout)
 	{
 		// Add legend related stuff to layout
@@ -226,40 +415,35 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 		txtConcern = AddATextField(layout, txtConcern, 1, 10, 140);
 		txtDanger = AddATextField(layout, txtDanger, 1, 10, 160);
 		
-		txtAccept.setBackground(new Color(153,255,153));
-		txtConcern.setBackground(new Color(255,255,153));
-		txtDanger.setBackground(new Color(255,153,153));
+		txtAccept.setBackground(BOX_COLORS[1]);
+		txtConcern.setBackground(BOX_COLORS[2]);
+		txtDanger.setBackground(BOX_COLORS[3]);
 		
-		lblAccept = LocateALabel(layout, lblAccept, "Acceptable", 45, 120);
-		lblConcern = LocateALabel(layout, lblConcern, "Concerning", 45, 140);
-		lblDanger = LocateALabel(layout, lblDanger, "Dangerous", 45, 160);
+		lblAccept = LocateALabel(layout, lblAccept, "Acceptable           ", 45, 120);
+		lblConcern = LocateALabel(layout, lblConcern, "Concerning           ", 45, 140);
+		lblDanger = LocateALabel(layout, lblDanger, "Dangerous            ", 45, 160);
 		
 	}
 	
-	// Creates and adds to layout the TextField boxes that are used as a color-coded grid
+	// Creates and adds to layout the canvas that is used as a color-coded grid
 	private void AddDataBoxes(SpringLayout layout)
 	{
-		// For each row...
-		for (int y = 0; y < totalY; y++)
-		{
-			// For each cell in row...
-			for (int x = 0; x < totalX; x++)
-			{
-				// Make new TextField
-				contents[x][y] = new TextField(1);
-				
-				// Add it to layout
-				add(contents[x][y]);
-				// Apply layout constraints to it
-				layout.putConstraint(SpringLayout.WEST, contents[x][y], x * 30 + 175, SpringLayout.WEST, this);
-                layout.putConstraint(SpringLayout.NORTH, contents[x][y], y * 20 + 70, SpringLayout.NORTH, this);
-                
-                // Prevent user from altering it
-                contents[x][y].setEditable(false);
-                // Add Mouse listener to it (for use later)
-                contents[x][y].addMouseListener(this);
-			}
-		}
+		// Make new canvas for every cell, colored by band
+		heatmap = new HeatmapCanvas(totalX, totalY, BOX_COLORS);
+		
+		// Add it to layout
+		add(heatmap);
+		// Apply layout constraints to it,
+		// stretching it to the bottom right of the window so it grows when the window is resized
+		layout.putConstraint(SpringLayout.WEST, heatmap, 175, SpringLayout.WEST, this);
+		layout.putConstraint(SpringLayout.NORTH, heatmap, 70, SpringLayout.NORTH, this);
+		layout.putConstraint(SpringLayout.EAST, heatmap, -10, SpringLayout.EAST, this);
+		layout.putConstraint(SpringLayout.SOUTH, heatmap, -10, SpringLayout.SOUTH, this);
+		
+		// Listen for the cell under the mouse, used to show its value
+		heatmap.setCellHoverListener(this);
+		// and for the cells selected, to show their sum, mean, max and min
+		heatmap.setCellSelectionListener(this);
 	}
 	
 	// Method that grabs the data from the .csv file and refreshes the GUI with relevant stuff
@@ -268,7 +452,8 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 	{
 		DebugPrintln("Loading information for " + hazard + " to screen...");
 		
-		String fileName = "Ians_W7_" + hazard + ".csv";	// default file name
+		String fileName = hazardFiles.get(hazard);	// default (or latest sweep) file name
+		boolean defaultFile = true;
 		
 		// If Manual Mode, set up open file dialog to select file
 		if (manualMode)
@@ -302,20 +487,186 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 			else
 			{
 				DebugPrintln("Selected file is " + fileName);
+				defaultFile = false;
 			}
 		}
 		
-		// Load Data to data array[][]
-		data = LoadDataFromFile(fileName);
+		// A newer request replaces any load still in progress
+		if (reloadTask != null)
+		{
+			reloadTask.cancel(true);
+		}
+		if (compositeTask != null)
+		{
+			compositeTask.cancel(true);
+			compositeTask = null;
+		}
+		
+		// Load Data to grid model in the background, ShowGrid is called with it when done
+		reloadTask = new ReloadTask(hazard, fileName, defaultFile, null);
+		reloadTask.execute();
+	}
+	
+	// Puts a loaded grid on screen (on the AWT event thread, when a ReloadTask is done)
+	private void ShowGrid(Hazard hazard, GridView view, String fileName, boolean defaultFile)
+	{
+		HazardGrid loaded = view.grid;
+		
+		// The on-screen grid was sized from the first file, so the new data has to match it
+		if (loaded.width() != totalX || loaded.height() != totalY)
+		{
+			DebugPrintln("ERROR!\t" + fileName + " holds " + loaded.width() + "," + loaded.height() + " readings but the grid is " + totalX + "," + totalY);
+			return;
+		}
+		data = loaded;
+		composite = null;
+		
+		// Keep the freshly loaded default file with the others, so exports and the view agree
+		if (defaultFile)
+		{
+			grids.put(hazard, loaded);
+			currentHazard = hazard;
+		}
+		else
+		{
+			currentHazard = null;
+		}
 
 		// Set the TextField Grid color-coding
-		SetBoxColors(hazard);
+		SetBoxColors(view);
 		// Update various GUI controls based on loaded data
 		lblHazardLvl.setText(hazard + " Levels");
 		lblHazardName.setText("(" + hazard.hazard_name() + ")");
-		lblAddress.setText(data[0][0]);
-		lblDate.setText("Date: " + data[0][1]);
-		lblTime.setText("Time: " + data[0][2]);
+		lblLevel.setText("Recorded Level:");
+		lblAddress.setText(data.header().address());
+		lblDate.setText("Date: " + data.header().date());
+		lblTime.setText("Time: " + data.header().time());
+		
+		// Show the new value of the cell under the mouse, if any
+		cellHovered(heatmap.hoveredCell());
+	}
+	
+	// Method that loads the latest file of every hazard and shows the worst band of each cell across them
+	// (and which hazard it comes from), in the background like ReloadAndRefresh
+	private void ReloadComposite()
+	{
+		DebugPrintln("Loading worst case of all hazards to screen...");
+		
+		// A newer request replaces any load still in progress
+		if (reloadTask != null)
+		{
+			reloadTask.cancel(true);
+			reloadTask = null;
+		}
+		if (compositeTask != null)
+		{
+			compositeTask.cancel(true);
+		}
+		
+		compositeTask = new CompositeTask(new LinkedHashMap<Hazard, String>(hazardFiles), null);
+		compositeTask.execute();
+	}
+	
+	// Combines the grids of every hazard into their worst case in one pass.
+	// Returns null (after reporting the problem) if a hazard is missing or the grids differ in size
+	private static CompositeGrid CombineHazards(Map<Hazard, HazardGrid> loaded)
+	{
+		Hazard[] hazards = Hazard.values();
+		HazardGrid[] hazardGrids = new HazardGrid[hazards.length];
+		HazardClassifier[] classifiers = new HazardClassifier[hazards.length];
+		
+		for (Hazard hazard : hazards)
+		{
+			hazardGrids[hazard.ordinal()] = loaded.get(hazard);
+			classifiers[hazard.ordinal()] = hazard.classifier();
+			
+			if (hazardGrids[hazard.ordinal()] == null)
+			{
+				DebugPrintln("ERROR!\tNo " + hazard + " data to combine with the other hazards");
+				return null;
+			}
+		}
+		
+		try
+		{
+			return CompositeGrid.combine(hazardGrids, classifiers);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println("ERROR!\t" + e.getMessage());
+			DebugPrintln("ERROR!\t" + e.getMessage());
+			return null;
+		}
+	}
+	
+	// Puts the worst case of all hazards on screen (on the AWT event thread, when a CompositeTask is done)
+	private void ShowComposite(GridView view)
+	{
+		CompositeGrid combined = view.composite;
+		HazardGrid readings = combined.readings();
+		if (readings.width() != totalX || readings.height() != totalY)
+		{
+			DebugPrintln("ERROR!\tHazards hold " + readings.width() + "," + readings.height() + " readings but the grid is " + totalX + "," + totalY);
+			return;
+		}
+		composite = combined;
+		data = readings;
+		currentHazard = null;
+		
+		// The worst bands are the box colors, like any single hazard
+		ShowBands(combined.bands());
+		
+		ShowCompositeStatistics(combined);
+		ShowDangerZones(view.zones);
+		
+		// Readings of different hazards cannot be added up, so there is nothing to show for a selection
+		regions = null;
+		cellsSelected(heatmap.selection());
+		
+		lblHazardLvl.setText("All Hazards");
+		lblHazardName.setText("(Worst of all hazards)");
+		lblAddress.setText(data.header().address());
+		lblDate.setText("Date: " + data.header().date());
+		lblTime.setText("Time: " + data.header().time());
+		
+		cellHovered(heatmap.hoveredCell());
+	}
+	
+	// Shows how many cells are in each worst band next to the legend,
+	// and which hazard makes the most cells dangerous (or concerning, if none are dangerous)
+	private void ShowCompositeStatistics(CompositeGrid combined)
+	{
+		BandGrid bands = combined.bands();
+		long[] bandCounts = new long[HazardClassifier.BAND_COUNT];
+		long[][] sourceCounts = new long[HazardClassifier.BAND_COUNT][Hazard.values().length];
+		
+		byte[] row = new byte[bands.width()];
+		for (int y = 0; y < bands.height(); y++)
+		{
+			bands.row(y, row, 0);
+			for (int x = 0; x < row.length; x++)
+			{
+				byte band = row[x];
+				bandCounts[band]++;
+				if (band != HazardClassifier.WHITE)
+					sourceCounts[band][combined.sourceAt(y * row.length + x)]++;
+			}
+		}
+		
+		byte worstBand = bandCounts[HazardClassifier.RED] > 0 ? HazardClassifier.RED : HazardClassifier.YELLOW;
+		Hazard worst = null;
+		for (Hazard hazard : Hazard.values())
+		{
+			if (sourceCounts[worstBand][hazard.ordinal()] > 0 && (worst == null || sourceCounts[worstBand][hazard.ordinal()] > sourceCounts[worstBand][worst.ordinal()]))
+				worst = hazard;
+		}
+		
+		lblPeak.setText(worst == null ? "No concerning cells" : "Most " + (worstBand == HazardClassifier.RED ? "dangerous" : "concerning") + ": " + worst);
+		lblPercentiles.setText("");
+		
+		lblAccept.setText("Acceptable (" + bandCounts[HazardClassifier.GREEN] + ")");
+		lblConcern.setText("Concerning (" + bandCounts[HazardClassifier.YELLOW] + ")");
+		lblDanger.setText("Dangerous (" + bandCounts[HazardClassifier.RED] + ")");
 	}
 	
 	// Changes the text on the Hazard-related buttons depending on Manual Mode status
@@ -324,468 +675,383 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 		if (manualMode)
 		{
 			// Further reflects that it will open manually selected csv file
-			btnSO2.setLabel("Open " + Hazard.SO2 + " csv...");
-			btnNO2.setLabel("Open " + Hazard.NO2 + " csv...");
-			btnCO.setLabel("Open " + Hazard.CO + " csv...");
-			btnObstruct.setLabel("Open " + Hazard.Obstruct + " csv...");
+			for (Hazard hazard : Hazard.values())
+			{
+				hazardButtons[hazard.ordinal()].setLabel("Open " + hazard + " csv...");
+			}
 		}
 		else
 		{
 			// Default, just shows hazard name
-			btnSO2.setLabel(Hazard.SO2.hazard_name());
-			btnNO2.setLabel(Hazard.NO2.hazard_name());
-			btnCO.setLabel(Hazard.CO.hazard_name());
-			btnObstruct.setLabel(Hazard.Obstruct.hazard_name());
+			for (Hazard hazard : Hazard.values())
+			{
+				hazardButtons[hazard.ordinal()].setLabel(hazard.hazard_name());
+			}
 		}
 	}
 
-	// Method that grabs first default hazard file
-	// and calculates related X and Y from its data
-	private void GetXYFromFile(String fileName)
-	{
-		DebugPrintln("Trying to get X and Y counts from " + fileName + "...");
+	// Loads ALL the data from the csv file and makes a HazardGrid out of it.
+	// The file is read once, and its X and Y counts are worked out from the data itself.
+	// Comes straight from the cache if the file has not changed since it was last loaded.
+	// Returns null (after reporting the problem) if the file cannot be read or is malformed
+	private HazardGrid LoadDataFromFile(String fileName)
+	{	
+		DebugPrintln("Trying to load data from " + fileName + "...");
+		
 		try
 		{
-			// Create new BufferedReader to read file
-			BufferedReader br = new BufferedReader(new FileReader(fileName));
-			
-			// Setup new x and y counts
-			int x_Count = 0;
-			int y_Count = 0;
-			
-			// while can read the file..
-			while (br.readLine() != null)
-			{
-				// Count all the lines for y
-				y_Count++;
-				
-				if (y_Count == 3)	// First line with actual data
-				{
-					// Split the line into each x piece separated by comma
-					String[] lineData = br.readLine().split(",");
-					// Count the amount of pieces on a line to get x
-					x_Count = lineData.length;
-				}
-			}
-			
-			// close BufferedReader when done with it
-			br.close();
-			
-			DebugPrintln("Calculated x,y as " +x_Count + "," + (y_Count - 2));
-
-			// Update the totals with new values,
-			// and the arrays that use them as a base for their sizes
-			totalX = x_Count;
-			totalY = y_Count - 2;	// Offset to account for the extra lines in the data files
-			contents = new TextField[totalX][totalY];
-			data = new String[totalX][totalY+3];
+			HazardGrid grid = cache.load(fileName);
+			DebugLog.debug(() -> "Loaded " + grid.width() + "," + grid.height() + " readings from " + fileName);
+			return grid;
 		}
 		catch (Exception e)
 		{
-			System.err.println("ERROR: " + e.getMessage());
-			DebugPrintln("ERROR!\t" + e.getMessage());
+			System.err.println("Error: " + fileName + ": " + e.getMessage()); // print message on error
+			DebugPrintln("ERROR!\t" + fileName + ": " + e.getMessage());
+			return null;
 		}
 	}
 	
-	// Loads ALL the data from the csv file and makes a 2D array out of it
-	private String[][] LoadDataFromFile(String fileName)
-	{	
-		DebugPrintln("Trying to load data from " + fileName + "...");
-		String[][] tempdata = new String[totalX][totalY+3];
+	// Loads the given files of all hazards at the same time on the loader threads,
+	// and waits for them. Files that fail are reported and left out of the map
+	private Map<Hazard, HazardGrid> LoadAllHazards(Map<Hazard, String> files)
+	{
+		return LoadAllHazards(files, null);
+	}
+	
+	// The same, also putting what went wrong with each file that failed into failed (if not null), by hazard name
+	private Map<Hazard, HazardGrid> LoadAllHazards(Map<Hazard, String> files, Map<String, String> failed)
+	{
+		DebugPrintln("Trying to load data for all hazards...");
+		Map<Hazard, HazardGrid> loaded = new LinkedHashMap<Hazard, HazardGrid>();
 		
-		try
+		Map<Hazard, Future<HazardGrid>> futures = loader.loadAll(files);
+		for (Map.Entry<Hazard, Future<HazardGrid>> entry : futures.entrySet())
 		{
-			// Create new BufferedReader to read file
-			BufferedReader br = new BufferedReader(new FileReader(fileName));
+			String fileName = files.get(entry.getKey());
 			
-			// For each y coordinate...
-			for (int y = 0; y < totalY + 3; y++)
+			try
 			{
-				// Read line from file
-				String line = br.readLine();
-				
-				//  If y is one of the first 3 (which holds, location, date, and time stamp)
-				if (y < 3)
+				HazardGrid grid = entry.getValue().get();
+				DebugLog.debug(() -> "Loaded " + grid.width() + "," + grid.height() + " readings from " + fileName);
+				loaded.put(entry.getKey(), grid);
+				RecordSweep(entry.getKey(), grid);
+			}
+			catch (ExecutionException e)
+			{
+				System.err.println("Error: " + fileName + ": " + e.getCause().getMessage()); // print message on error
+				DebugPrintln("ERROR!\t" + fileName + ": " + e.getCause().getMessage());
+				if (failed != null)
 				{
-					// Each of the above goes in its own y coordinate(do not split the line)
-					tempdata[0][y] = line;
+					failed.put(entry.getKey().toString(), fileName + ": " + Describe(e.getCause()));
 				}
-				// else if 4th line or more (the lines that hold data readings)
-				else if (y >= 3)	
+			}
+			catch (InterruptedException e)
+			{
+				// Cancelled, stop the loads still running
+				for (Future<HazardGrid> future : futures.values())
 				{
-					// split the line separated by comma
-					// and put each piece into temp array
-					String[] lineData = line.split(",");
-					
-					// for each of those pieces...
-					for (int x = 0; x < lineData.length;x++)
-					{
-						// put each piece in its respective spot
-						// in its respective row in the 2D array 
-						tempdata[x][y] = lineData[x];
-					}
+					future.cancel(true);
 				}
+				Thread.currentThread().interrupt();
+				break;
 			}
-			// Close the BufferedReader when done with it
-			br.close();	
 		}
 		
-		catch (Exception e)
-		{
-			System.err.println("Error: " + e.getMessage()); // print message on error
-			DebugPrintln("ERROR!\t" + e.getMessage());
-		}
-		
-		// return the 2D array that was made
-		return tempdata;
+		return loaded;
 	}
 	
-	private void SetBoxColors(Hazard hazard)
+	// History of a hazard's sweeps, opened the first time it is needed (null if it cannot be opened)
+	SweepHistory History(Hazard hazard)
 	{
-		//For each row...
-		for (int y = 0; y < totalY; y++)
+		synchronized (history)
 		{
-			// For each box in row...
-			for (int x = 0; x < totalX; x++)
+			if (!history.containsKey(hazard))
 			{
-				// Set the color of the box based on the value it is meant to represent
-				contents[x][y].setBackground(GetBoxColor(Integer.parseInt(data[x][y+3]), hazard));
+				try
+				{
+					history.put(hazard, new SweepHistory(new File("history"), hazard.toString()));
+				}
+				catch (Exception e)
+				{
+					System.err.println("ERROR!\t" + e.getMessage());
+					DebugPrintln("ERROR!\t" + e.getMessage());
+					history.put(hazard, null);
+				}
 			}
+			return history.get(hazard);
 		}
 	}
 	
-	// Method to get respective color based on the Hazard and value given to it
-	private Color GetBoxColor(int boxValue, Hazard hazard)
+	// Adds a loaded sweep to its hazard's history, unless it is already the newest one there
+	// (runs on whichever thread loaded it)
+	private void RecordSweep(Hazard hazard, HazardGrid grid)
 	{
-		// Setup color variable
-		Color boxColor = new Color(255,255,255); //White, default
+		SweepHistory sweeps = History(hazard);
+		if (sweeps == null)
+			return;
 		
-		// If value is 0
-		if (boxValue == 0)
+		try
 		{
-			boxColor = new Color(255,255,255);	// Color is white
+			if (sweeps.append(grid))
+			{
+				DebugLog.debug(() -> "Added " + hazard + " sweep of " + grid.header().date() + " " + grid.header().time() + " to history");
+			}
 		}
-		
-		// Else if the value is above 0 but below the Concerning threshold...
-		else if (boxValue < hazard.yellow_limit())
+		catch (Exception e)
 		{
-			boxColor = new Color(153,255,153);	// Color is a light green
+			DebugLog.warn("Sweep not added to " + hazard + " history: " + e.getMessage());
 		}
+	}
+	
+	// Works out everything shown of a hazard's grid (runs on a background thread, never the AWT event thread)
+	private GridView PrepareGrid(Hazard hazard, HazardGrid grid)
+	{
+		// Classify every box in one pass, based on the value it is meant to represent
+		// (or reuse the bands from the last time this grid was shown or exported)
+		BandGrid bands = cache.classify(grid, hazard.classifier());
 		
-		// Else if it is equal to or above Concerning threshold
-		// but below Dangerous threshold...
-		else if (boxValue < hazard.red_limit())
+		return new GridView(grid, bands, hazard.statistics(grid), DangerZones.find(bands, grid, HazardClassifier.YELLOW), RegionIndex.build(grid), null);
+	}
+	
+	// Works out everything shown of the worst case of all hazards (on a background thread too)
+	private static GridView PrepareComposite(CompositeGrid combined)
+	{
+		return new GridView(combined.readings(), combined.bands(), null, DangerZones.find(combined.bands(), combined.readings(), HazardClassifier.YELLOW), null, combined);
+	}
+	
+	// Hands bands to the canvas. If it already shows bands of the same size (a new sweep of the
+	// same grid usually changes only a few rows), only the rows that differ are set and repainted.
+	// Rows are compared packed, so this is quick next to recolouring the whole grid
+	private void ShowBands(BandGrid bands)
+	{
+		BandGrid shown = heatmap.bands();
+		if (shown == null || shown.width() != bands.width() || shown.height() != bands.height())
 		{
-			boxColor = new Color(255,255,153);	// Color is a light yellow
+			heatmap.setCells(bands);
+			return;
 		}
 		
-		// Otherwise...
-		// (at this point would be either equal to or above dangerous threshold)
-		else
+		int y = 0;
+		while (y < bands.height())
 		{
-			boxColor = new Color(255,153,153);	// Color is a light red
+			if (bands.sameRow(y, shown))
+			{
+				y++;
+				continue;
+			}
+			
+			// Each run of changed rows in one go
+			int start = y;
+			while (y < bands.height() && !bands.sameRow(y, shown))
+			{
+				y++;
+			}
+			heatmap.setRows(bands, start, y);
 		}
-		// Return the calculated color
-		return boxColor;
 	}
 	
-	// Method to get respective color letter based on the Hazard and value given to it
-	private String GetColorLetter(int boxValue, Hazard hazard)
+	private void SetBoxColors(GridView view)
 	{
-		// set up color string variable
-		String letter = "W"; //White, default
+		// Hand the bands to the canvas, which repaints what changed
+		// (bands are also the index of each box color in BOX_COLORS)
+		ShowBands(view.bands);
 		
-		// If value is 0
-		if (boxValue == 0)
+		ShowStatistics(view.stats);
+		ShowDangerZones(view.zones);
+		
+		// Indexed readings, so any selection can be summed up without going over its cells
+		regions = view.regions;
+		cellsSelected(heatmap.selection());
+	}
+	
+	// Outlines every danger zone (touching yellow and red cells) on the grid,
+	// and shows how many there are and the size of the biggest
+	private void ShowDangerZones(DangerZones zones)
+	{
+		Rectangle[] areas = new Rectangle[zones.zones().size()];
+		Color[] colors = new Color[areas.length];
+		int biggest = 0;
+		for (DangerZones.Zone zone : zones.zones())
 		{
-			letter = "W";
+			areas[zone.id()] = new Rectangle(zone.minX(), zone.minY(), zone.maxX() - zone.minX() + 1, zone.maxY() - zone.minY() + 1);
+			colors[zone.id()] = zone.worstBand() == HazardClassifier.RED ? RED_ZONE_COLOR : YELLOW_ZONE_COLOR;
+			biggest = Math.max(biggest, zone.size());
 		}
+		heatmap.setHighlights(areas, colors);
 		
-		// Else if the value is above 0 but below the Concerning threshold...
-		else if (boxValue < hazard.yellow_limit())
+		lblZones.setText("Danger zones: " + areas.length + (areas.length > 0 ? "   Biggest: " + biggest : ""));
+	}
+	
+	// Shows the peak, mean and percentiles of the on-screen grid,
+	// and how many cells are in each band next to the legend
+	private void ShowStatistics(HazardStatistics stats)
+	{
+		lblPeak.setText("Peak: " + stats.max() + "   Mean: " + String.format("%.2f", stats.mean()));
+		lblPercentiles.setText("Median: " + stats.percentile(0) + "   95th: " + stats.percentile(2));
+		
+		lblAccept.setText("Acceptable (" + stats.bandCount(HazardClassifier.GREEN) + ")");
+		lblConcern.setText("Concerning (" + stats.bandCount(HazardClassifier.YELLOW) + ")");
+		lblDanger.setText("Dangerous (" + stats.bandCount(HazardClassifier.RED) + ")");
+	}
+	
+	// Method to generate and and export data for all 4 hazards in formats specified by client.
+	// The work runs on an ExportTask in the background; clicking Export again cancels it
+	private void ExportData()
+	{
+		// If an export is already running, cancel it instead
+		if (exportTask != null)
 		{
-			letter = "G";
+			DebugPrintln("Cancelling export...");
+			exportTask.cancel(true);
+			return;
 		}
 		
-		// Else if it is equal to or above Concerning threshold
-		// but below Dangerous threshold...
-		else if (boxValue < hazard.red_limit())
+		// Change Export button text to reflect current actions
+		btnExport.setLabel("Exporting... (cancel)");
+		
+		exportTask = new ExportTask(new LinkedHashMap<Hazard, String>(hazardFiles));
+		exportTask.execute();
+	}
+	
+	// Called on the AWT event thread when an ExportTask finishes, with the grids it loaded
+	// (null if the export was cancelled or failed), what went wrong (null unless it failed)
+	// and what went wrong with each hazard that could not be loaded or exported, by name
+	private void ExportFinished(Map<Hazard, HazardGrid> exported, Throwable failure, Map<String, String> failed)
+	{
+		exportTask = null;
+		
+		// Set Export button text to default when done
+		btnExport.setLabel("Export .RAF .DAT .RPT .SUM .ZON");
+		
+		if (failure != null)
 		{
-			letter = "Y";
+			JOptionPane.showMessageDialog(null, "Export failed: " + Describe(failure) + System.lineSeparator() + System.lineSeparator() + "Files in the \"export\\\" folder may be incomplete.", ".RAF, .DAT, .RPT, .SUM, .ZON File Export", JOptionPane.ERROR_MESSAGE);
+			return;
 		}
 		
-		// Otherwise...
-		// (at this point would be either equal to or above dangerous threshold)
-		else
+		if (exported == null)
 		{
-			letter = "R";
+			JOptionPane.showMessageDialog(null, "Export was cancelled. Files in the \"export\\\" folder may be incomplete.", ".RAF, .DAT, .RPT, .SUM, .ZON File Export", JOptionPane.WARNING_MESSAGE);
+			return;
 		}
 		
-		// Return the calculated letter
-		return letter;
-	}
-	
-	// Method to generate and and export data for all 4 hazards in formats specified by client
-	private void ExportData()
-	{
-		// Change Export button text to reflect current actions
-		btnExport.setLabel("Exporting...");
+		grids = exported;
 		
-		// http://stackoverflow.com/questions/3634853/how-to-create-a-directory-in-java
-		// setup directory to export files into
-		File dir = new File("export");
-		if (!dir.exists())
+		// The on-screen grid shows the freshly loaded data too (worked out in the background)
+		if (currentHazard != null)
 		{
-			if(!dir.mkdir())
+			HazardGrid shown = grids.get(currentHazard);
+			if (shown != null && reloadTask == null)
 			{
-				DebugPrintln("ERROR: Unable to create directory " + dir.getName());
+				reloadTask = new ReloadTask(currentHazard, hazardFiles.get(currentHazard), true, shown);
+				reloadTask.execute();
 			}
 		}
+		else if (composite != null && compositeTask == null)
+		{
+			compositeTask = new CompositeTask(new LinkedHashMap<Hazard, String>(hazardFiles), new LinkedHashMap<Hazard, HazardGrid>(grids));
+			compositeTask.execute();
+		}
 		
-		// http://stackoverflow.com/questions/2399590/java-what-does-the-colon-operator-do
-		// http://stackoverflow.com/questions/16674881/how-do-i-loop-through-an-enum-in-java
-		// For each of the hazards...
-		for (Hazard hazard : Hazard.values())
+		// Any hazard that failed is listed instead of claiming success
+		if (!failed.isEmpty())
 		{
-			// Load the data from default files
-			String[][] tempdata = LoadDataFromFile("Ians_W7_" + hazard + ".csv");
-			
-			// Calculate the totalX and totalY for the data
-			int temp_totalX = tempdata.length;
-			int temp_totalY = (tempdata[0].length);
-			
-			// declare some StringBuilders which will be used to make specific-formatted lines
-			// http://stackoverflow.com/questions/12899953/in-java-how-to-append-a-string-more-efficiently
-			
-			StringBuilder sbRAF = new StringBuilder();
-
-			StringBuilder sbDAT = null; // new StringBuilder();
-			StringBuilder sbRPT = null; // new StringBuilder();
-			
-			// Declare some String variables used for the final outputs for each export type
-			String RAF_output = null;
-			String[] DAT_output = new String[temp_totalX * (temp_totalY - 3)];
-			String[] RPT_output = new String[temp_totalY - 3];
-			
-			// a counter used to count each cell of data
-			int cellCounter = 0;
-			
-			// for each row/line... (not counting the first 3 used for non-data-reading stuff)
-			for (int y = 3; y < temp_totalY; y++)
+			StringBuilder message = new StringBuilder("Export failed for " + failed.size() + (failed.size() == 1 ? " hazard:" : " hazards:"));
+			message.append(System.lineSeparator());
+			for (Map.Entry<String, String> entry : failed.entrySet())
 			{
-				// Make new StringBuilder for RPT file
-				sbRPT = new StringBuilder();
-				
-				// Setup some default vars
-				String color = "color";
-				int counter = 0;
-				
-				// for each cell on a row/line...
-				for (int x = 0; x < temp_totalX; x++)
-				{
-					// make new StringBuilder for DAT file
-					sbDAT = new StringBuilder();
-					
-					// Append respective color letter to RAF file StringBuilder
-					// Format is just each data recording's letter all on one line
-					sbRAF.append(GetColorLetter(Integer.parseInt(tempdata[x][y]), hazard));
-					
-					// Build string for a line of DAT file
-					// format is a  line of "x_coord,Y_coord,colorletter"
-					// for each data recording 
-					sbDAT.append(x+1);
-					sbDAT.append(",");
-					sbDAT.append(y-2);
-					sbDAT.append(",");
-					sbDAT.append(GetColorLetter(Integer.parseInt(tempdata[x][y]), hazard));
-					
-					// Add the line to output array for DAT file
-					DAT_output[cellCounter] = sbDAT.toString();
-					cellCounter++;
-
-					// DebugPrintln("Box cell No. " + cellCounter + " exists at [" + (x + 1) + "][" + (y - 2) + "] and has color of " + GetColorLetter(Integer.parseInt(tempdata[x][y]), hazard) + " for the " + hazard.hazard_name() + " hazard.");
-					
-					// RPT file line generation...
-					// format is one line per row, listing color
-					// and count of said color occurring consecutively
-
-					// RPT line generation may or may not be bad for one's health...
-					
-					// If at first data reading in the line...
-					if (x == 0)
-					{
-						// Get the color letter
-						color = GetColorLetter(Integer.parseInt(tempdata[0][y]), hazard);
-						
-						//  set counter to 1
-						counter = 1;
-					}
-					// If not the first data reading in file...
-					else
-					{
-						// If color of current data reading is equal to previous one...
-						if (color.equalsIgnoreCase(GetColorLetter(Integer.parseInt(tempdata[x][y]), hazard)))
-						{
-							// if the last data reading on the line...
-							if (x == temp_totalX -1)
-							{
-								counter++;
-								sbRPT.append(color);
-								sbRPT.append(",");
-								sbRPT.append(counter);
-							}
-						}
-						// Otherwise... (color is different from last one)
-						else
-						{
-							sbRPT.append(color);
-							sbRPT.append(",");
-							sbRPT.append(counter);
-							
-							// If not last data reading in the row
-							if (x < temp_totalX)
-							{
-								//add a comma to line
-								sbRPT.append(",");
-							}
-							
-							// reset stuff for next line
-							color = GetColorLetter(Integer.parseInt(tempdata[x][y]), hazard);
-							counter = 0;
-						}
-						counter++;
-					}
-				}
-				// add generated line to respective array
-				RPT_output[y - 3] = sbRPT.toString();
+				message.append(System.lineSeparator()).append(entry.getKey()).append(": ").append(entry.getValue());
 			}
-			// add generated line to respective string
-			RAF_output = sbRAF.toString();
-			
-			// Get final results and write them to respective files!
-			// WriteLinesToFile(RAF_output, dir.getName() + "\\Ians_W7_" + hazard + ".RAF");
-			writeRAF(dir.getName() + "\\Ians_W7_" + hazard + ".RAF", 0, RAF_output);
-			WriteLinesToFile(DAT_output, dir.getName() + "\\Ians_W7_" + hazard + ".DAT");
-			WriteLinesToFile(RPT_output, dir.getName() + "\\Ians_W7_" + hazard + ".RPT");
+			message.append(System.lineSeparator()).append(System.lineSeparator()).append("Files in the \"export\\\" folder may be incomplete.");
+			JOptionPane.showMessageDialog(null, message.toString(), ".RAF, .DAT, .RPT, .SUM, .ZON File Export", JOptionPane.ERROR_MESSAGE);
+			return;
 		}
 		
-		// Set Export button text to default when done
-		btnExport.setLabel("Export .RAF .DAT .RPT");
-		
 		// Also display message box informing user that export should be completed
 		// when everything is (hopefully) finally done
 		// http://stackoverflow.com/questions/7080205/popup-message-boxes
-		JOptionPane.showMessageDialog(null,".RAF, .DAT, .RPT File Export should be done!" + System.lineSeparator() + System.lineSeparator() + "Check \"export\\\" folder to access them.",".RAF, .DAT, .RPT File Export",JOptionPane.INFORMATION_MESSAGE);
+		JOptionPane.showMessageDialog(null,".RAF, .DAT, .RPT, .SUM, .ZON File Export should be done!" + System.lineSeparator() + System.lineSeparator() + "Check \"export\\\" folder to access them.",".RAF, .DAT, .RPT, .SUM, .ZON File Export",JOptionPane.INFORMATION_MESSAGE);
 	}
 	
-	// http://javarevisited.blogspot.com.au/2015/02/randomaccessfile-example-in-java-read-write-String.html
-	private void writeRAF(String fileName, int position, String str)
+	// Method to generate and export the data of one hazard in the formats specified by client,
+	// named after the file it came from (runs on a loader thread, one hazard per thread).
+	// Throws whatever stopped the export, for the caller to report
+	private void ExportHazard(Hazard hazard, HazardGrid tempdata, File dir, String fileName) throws Exception
 	{
-		try
-		{
-			RandomAccessFile raf = new RandomAccessFile(fileName, "rw");
-			
-			raf.seek(position);
-			raf.writeUTF(str);
-			
-			raf.close();
-			// DebugPrintln(fileName + "\t" + position + "\t" + str);
-		}
-		catch (Exception e)
+		DebugPrintln("Trying to export " + hazard + " to " + dir.getName() + "...");
+		
+		// Auto exports and the Export button can overlap, so only one export of a hazard runs at a time
+		synchronized (hazard)
 		{
-			System.err.println("ERROR!\t" + e.getMessage());
-			DebugPrintln("ERROR!\t" + e.getMessage());
+			// Classify every cell once, then write all three files in one pass over the bands,
+			// only rewriting the rows that changed since the last export
+			BandGrid bands = cache.classify(tempdata, hazard.classifier());
+			int rows = GridExporter.exportChanged(bands, hazard.toString(), dir, HazardGridLoader.exportNameFor(fileName));
+			GridExporter.exportSummary(hazard.statistics(tempdata), hazard.toString(), dir, HazardGridLoader.exportNameFor(fileName));
+			GridExporter.exportZones(DangerZones.find(bands, tempdata, HazardClassifier.YELLOW), hazard.toString(), dir, HazardGridLoader.exportNameFor(fileName));
+			DebugLog.debug(() -> "Exported " + hazard + ", " + rows + " of " + bands.height() + " rows rewritten");
 		}
 	}
 	
-	// Method that gets a string, and writes it to a file
-	/* Currently Unused, RAF creation is handled by writeRAF()
-	private void WriteLinesToFile(String line, String fileName)
+	// Method to export the worst case of all hazards as a fifth .RAF, .DAT and .RPT set,
+	// named after the sweep of the first hazard's file (runs on a loader thread).
+	// Throws whatever stopped the export, for the caller to report
+	private void ExportComposite(Map<Hazard, HazardGrid> loaded, File dir, String fileName) throws Exception
 	{
-		DebugPrintln("Trying to write String line to " + fileName + "...");
-		try
-		{
-			// Set up PrintWriter
-			PrintWriter out = new PrintWriter(fileName);
-			// Print given string on new line
-			out.println(line);
-			// Close PrintWriter when done with it
-			out.close();
-		}
-		catch (Exception e)
-		{
-			System.err.println("ERROR!\t" + e.getMessage());
-			DebugPrintln("ERROR!\t" + e.getMessage());
-		}
+		DebugPrintln("Trying to export " + HazardGridLoader.COMPOSITE + " to " + dir.getName() + "...");
+		
+		CompositeGrid combined = CombineHazards(loaded);
+		if (combined == null)
+			throw new IOException("The hazards could not be combined, see the debug log");
+		
+		BandGrid bands = combined.bands();
+		int rows = GridExporter.exportChanged(bands, HazardGridLoader.COMPOSITE, dir, HazardGridLoader.compositeNameFor(fileName));
+		DebugLog.debug(() -> "Exported " + HazardGridLoader.COMPOSITE + ", " + rows + " of " + bands.height() + " rows rewritten");
 	}
-	*/
 	
-	// Same method as above, but is overload to handle a string[]
-	private void WriteLinesToFile(String[] lines, String fileName)
+	// Message of an exception to show the user, or its name when it has none
+	private static String Describe(Throwable e)
 	{
-		DebugPrintln("Trying to write String[] lines to " + fileName + "...");
-		try
+		return e.getMessage() != null ? e.getMessage() : e.toString();
+	}
+	
+	// Makes the export folder if it does not exist yet
+	private static File ExportDirectory()
+	{
+		// http://stackoverflow.com/questions/3634853/how-to-create-a-directory-in-java
+		// setup directory to export files into
+		File dir = new File("export");
+		if (!dir.exists())
 		{
-			// Set up PrintWriter
-			PrintWriter out = new PrintWriter(fileName);
-			// For each String in the given String array...
-			for (int x = 0; x < lines.length; x++)
+			if(!dir.mkdir())
 			{
-				// Print given string on new line
-				out.println(lines[x]);
+				DebugPrintln("ERROR: Unable to create directory " + dir.getName());
 			}
-			// Close PrintWriter when done with it
-			out.close();
-		}
-		catch (Exception e)
-		{
-			System.err.println("ERROR!\t" + e.getMessage());
-			DebugPrintln("ERROR!\t" + e.getMessage());
 		}
+		return dir;
 	}
 	
-	// inefficient, but it works for now.
 	// Method that is used as a wrapper for System.out.println
 	// but adds timestamp to the line
-	// and can also add that line to a debug log file
+	// and can also add that line to a debug log file.
+	// The line is handed to DebugLog, which prints and writes it on its own thread
 	// use -d1 or -d2 argument when running program to output log file
 	// -d1 appends it to existing log if it exists
 	// -d2 tries to delete old debug log and create new one first
 	private static void DebugPrintln(String line)
 	{
-		// http://stackoverflow.com/questions/1625234/how-to-append-text-to-an-existing-file-in-java
-		// http://stackoverflow.com/questions/5175728/how-to-get-the-current-date-time-in-java
+		DebugLog.info(line);
+	}
+	
+	// Turns on debug logging to DEBUG.LOG (-d1 appends, -d2 starts a new log),
+	// along with the more detailed DEBUG level messages
+	private static void EnableDebugLog(boolean append)
+	{
+		DebugLog.setLevel(DebugLog.Level.DEBUG);
 		try
 		{
-			// grab current DateTime for timestamp
-			LocalDateTime ldt = LocalDateTime.now();
-			// set up StringBuilder
-			StringBuilder sb = new StringBuilder();
-			
-			// Build the string
-			//format is "[ timestamp ] TAB given_line"
-			sb.append("[");
-			sb.append(ldt.toString());
-			sb.append("]:\t");
-			sb.append(line);
-			sb.append(System.lineSeparator());
-			
-			// update line var to final generated version of line
-			line = sb.toString();
-			// Print it to console
-			System.out.print(line);
-			
-			// If DEBUG_LOGGING is enabled (via -d1 or -d2 command line switches)
-			if (DEBUG_LOGGING)
-			{
-				// Setup new FileWriter
-				FileWriter out = new FileWriter("DEBUG.LOG", true);
-				// write line to it
-				out.write(line);
-				// Close FileWriter when done with it
-				out.close();
-			}
-
+			DebugLog.openFile("DEBUG.LOG", append);
 		}
 		catch (Exception e)
 		{
@@ -825,6 +1091,39 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 	private void Exit()
 	{
 		DebugPrintln("Exiting Program...");
+		
+		// Stop watching for sweeps first, so none arrives for a history that is already closed
+		if (watcher != null)
+		{
+			try
+			{
+				watcher.close();
+			}
+			catch (Exception e)
+			{
+				DebugPrintln("ERROR!\t" + e.getMessage());
+			}
+		}
+		
+		// Close the history files
+		synchronized (history)
+		{
+			for (SweepHistory sweeps : history.values())
+			{
+				try
+				{
+					if (sweeps != null)
+						sweeps.close();
+				}
+				catch (Exception e)
+				{
+					DebugPrintln("ERROR!\t" + e.getMessage());
+				}
+			}
+		}
+		
+		// Make sure everything logged so far reaches the console and log file
+		DebugLog.close();
 		System.exit(0);
 	}
 	
@@ -870,24 +1169,17 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 	@Override
 	public void actionPerformed(ActionEvent e)
 	{
-		if (e.getSource() == btnSO2)
-		{
-			ReloadAndRefresh(Hazard.SO2);
-		}
-		
-		if (e.getSource() == btnNO2)
-		{
-			ReloadAndRefresh(Hazard.NO2);
-		}
-		
-		if (e.getSource() == btnCO)
+		for (Hazard hazard : Hazard.values())
 		{
-			ReloadAndRefresh(Hazard.CO);
+			if (e.getSource() == hazardButtons[hazard.ordinal()])
+			{
+				ReloadAndRefresh(hazard);
+			}
 		}
 		
-		if (e.getSource() == btnObstruct)
+		if (e.getSource() == btnComposite)
 		{
-			ReloadAndRefresh(Hazard.Obstruct);
+			ReloadComposite();
 		}
 		
 		if (e.getSource() == btnExport)
@@ -901,68 +1193,112 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 		}
 	}
 
+	// Event used for when mouse cursor moves onto a different cell of the color-coded grid.
+	// The canvas hands over the grid index of the cell directly,
+	// and only calls this when the cell changes, so plain mouse moves cost nothing here
 	@Override
-	public void mouseClicked(MouseEvent e)
+	public void cellHovered(int index)
 	{
+		// Nothing to show off the grid, or until a hazard file has been loaded
+		if (index < 0 || data == null)
+		{
+			txtValue.setText("");
+			return;
+		}
+		
+		// Display value of the grid box to Value TextField
+		txtValue.setText(Integer.toString(data.get(index)));
+		
+		// On the worst case of all hazards, the value is a reading of the hazard behind the cell's band
+		if (composite != null)
+		{
+			int source = composite.sourceAt(index);
+			lblLevel.setText(source == CompositeGrid.NONE ? "Recorded Level:" : Hazard.values()[source] + " Level:");
+		}
 	}
-
-	// Event used for when mouse cursor moves over a control
-	// in this case it is sued with the TextField grid
-	@Override
-	public void mouseEntered(MouseEvent e)
-	{
-		/* The TextFields used as color boxes do not have the actual data in them
-		 * (A different value box below was wanted by client instead)
-		 * and the TextFields know nothing of the 2D array that was used to spawn them...
-		 * 
-		 * BUT
-		 * 
-		 * They do know of their coordinates on screen.
-		 * And the box TextFields always start at 178,95
-		 * (on Windows systems at least...)
-		 * regardless of the amount of rows or columns
-		 * 
-		 * 178,95 = 0,0
-		 * 208,95 = 1,0
-		 * 178,115 = 0,1
-		 * 
-		 * difference of 30 for x intervals
-		 * difference of 20 for y intervals
-		 * 
-		 * So, for x, formula is (x_coord - 178) / 30
-		 * And, for y, formula is (y_coord - 95) / 20
-		 * 
-		 * Use these to pull data from 2D array that houses it,
-		 * and display in TextField txtValue.
-		 *
-		*/
-		
-		int x_coord = e.getComponent().getX();
-		int y_coord = e.getComponent().getY();
-		
-		int x = (x_coord - 178) / 30;
-		int y = (y_coord - 95) / 20;
-		
-		// Display value of calculated grid box to Value TextField
-		txtValue.setText(data[x][y+3]);
-		
-		// Debug output to console used during testing of the above
-		DebugPrintln("Box at Coordinates " + x_coord + "," + y_coord + " houses color " + e.getComponent().getBackground().toString() + " for data[" + x + "][" + y + "] which is " + data[x][y+3]);
-	}
-
+	
+	// Event used for when the selected cells of the color-coded grid change (shift-drag or right-drag).
+	// Called on every mouse move while dragging, so the answers come from the region index
 	@Override
-	public void mouseExited(MouseEvent e)
+	public void cellsSelected(Rectangle area)
 	{
+		if (area == null)
+		{
+			lblSelection.setText("Shift-drag to select cells");
+			lblSelectionRange.setText("");
+			return;
+		}
+		
+		// Nothing indexed (the worst case of all hazards mixes their units)
+		if (regions == null)
+		{
+			lblSelection.setText(area.width + "x" + area.height + " selected");
+			lblSelectionRange.setText("");
+			return;
+		}
+		
+		lblSelection.setText(area.width + "x" + area.height + "   Sum: " + regions.sum(area));
+		lblSelectionRange.setText("Mean: " + String.format("%.2f", regions.mean(area)) + "   " + regions.min(area) + " to " + regions.max(area));
 	}
-
+	
+	// Event used for when the SweepWatcher has loaded a new or updated sweep file (on a loader thread).
+	// Exports it straight away if Auto Export is on, then swaps it into the view
 	@Override
-	public void mousePressed(MouseEvent e)
+	public void sweepLoaded(final Hazard hazard, final String fileName, final HazardGrid grid)
 	{
+		RecordSweep(hazard, grid);
+		
+		if (autoExport)
+		{
+			try
+			{
+				ExportHazard(hazard, grid, ExportDirectory(), fileName);
+			}
+			catch (Exception e)
+			{
+				System.err.println("ERROR!\t" + hazard + ": " + Describe(e));
+				DebugPrintln("ERROR!\t" + hazard + ": " + Describe(e));
+			}
+		}
+		
+		EventQueue.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				SweepArrived(hazard, fileName, grid);
+			}
+		});
 	}
-
-	@Override
-	public void mouseReleased(MouseEvent e)
+	
+	// Makes a newly loaded sweep file the current one of its hazard (on the AWT event thread)
+	private void SweepArrived(Hazard hazard, String fileName, HazardGrid grid)
 	{
+		hazardFiles.put(hazard, fileName);
+		
+		// A load of this hazard's file still running would put an older sweep on screen, so it is replaced
+		boolean replacing = reloadTask != null && reloadTask.hazard == hazard && reloadTask.defaultFile;
+		
+		// Shown straight away if its hazard is on screen (or about to be), otherwise kept for when it is
+		if ((hazard == currentHazard && reloadTask == null) || replacing)
+		{
+			if (replacing)
+			{
+				reloadTask.cancel(true);
+			}
+			reloadTask = new ReloadTask(hazard, fileName, true, grid);
+			reloadTask.execute();
+		}
+		else
+		{
+			grids.put(hazard, grid);
+			
+			// The worst case of all hazards is worked out again with it
+			if (composite != null && reloadTask == null)
+			{
+				ReloadComposite();
+			}
+		}
 	}
 	
 	// Used for monitoring the status of CTRL keyboard button regardless of focus 
@@ -977,7 +1313,7 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 			// If the CTRL key is pressed/held down
 			if (key.isControlDown())
 			{
-				DebugPrintln("CTRL is pressed, manual file select mode ON.");
+				DebugLog.debug("CTRL is pressed, manual file select mode ON.");
 				// Manual Mode ON! User selects csv file manually to load up
 				manualMode = true;
 				// Change Hazard button text to reflect the above
@@ -986,7 +1322,7 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 			// Else if the CTRL key is released
 			else if (key.getID() == key.KEY_RELEASED && key.getKeyCode() == key.VK_CONTROL)
 			{
-				DebugPrintln("CTRL is released, manual file select mode OFF.");
+				DebugLog.debug("CTRL is released, manual file select mode OFF.");
 				// Manual Mode OFF. File selected uses default file name
 				manualMode = false;
 				// Change hazard button text to default
@@ -996,6 +1332,271 @@ public class IansIndustrialInstallation extends Frame implements WindowListener,
 		}
 	}
 	
+	// Everything shown of one grid, worked out off the AWT event thread
+	// so the event thread only has to hand it to the controls
+	static final class GridView
+	{
+		final HazardGrid grid;
+		final BandGrid bands;
+		final HazardStatistics stats;	// null for the worst case of all hazards
+		final DangerZones zones;
+		final RegionIndex regions;		// null for the worst case of all hazards
+		final CompositeGrid composite;	// null unless it is the worst case of all hazards
+		
+		GridView(HazardGrid grid, BandGrid bands, HazardStatistics stats, DangerZones zones, RegionIndex regions, CompositeGrid composite)
+		{
+			this.grid = grid;
+			this.bands = bands;
+			this.stats = stats;
+			this.zones = zones;
+			this.regions = regions;
+			this.composite = composite;
+		}
+	}
+	
+	// Background task that loads one hazard file off the AWT event thread (unless it is already loaded)
+	// and works out what is shown of it, then puts it on screen when done
+	// https://docs.oracle.com/javase/tutorial/uiswing/concurrency/worker.html
+	class ReloadTask extends SwingWorker<GridView, Void>
+	{
+		private final Hazard hazard;
+		private final String fileName;
+		private final boolean defaultFile;
+		private final HazardGrid grid;	// null to load it from fileName
+		
+		ReloadTask(Hazard hazard, String fileName, boolean defaultFile, HazardGrid grid)
+		{
+			this.hazard = hazard;
+			this.fileName = fileName;
+			this.defaultFile = defaultFile;
+			this.grid = grid;
+		}
+		
+		// Runs on a background thread
+		@Override
+		protected GridView doInBackground()
+		{
+			HazardGrid loaded = grid != null ? grid : LoadDataFromFile(fileName);
+			if (loaded == null || isCancelled())
+				return null;
+			
+			return PrepareGrid(hazard, loaded);
+		}
+		
+		// Runs on the AWT event thread
+		@Override
+		protected void done()
+		{
+			// A cancelled task has been replaced by a newer one
+			if (isCancelled())
+				return;
+			
+			reloadTask = null;
+			
+			try
+			{
+				GridView view = get();
+				if (view != null)
+				{
+					ShowGrid(hazard, view, fileName, defaultFile);
+				}
+			}
+			catch (InterruptedException | ExecutionException e)
+			{
+				System.err.println("ERROR!\t" + e.getMessage());
+				DebugPrintln("ERROR!\t" + e.getMessage());
+			}
+		}
+	}
+	
+	// Background task that loads the latest file of every hazard off the AWT event thread
+	// (unless they are already loaded) and combines them, then puts their worst case on screen when done
+	class CompositeTask extends SwingWorker<GridView, Void>
+	{
+		// File of each hazard to load
+		private final Map<Hazard, String> files;
+		private final Map<Hazard, HazardGrid> preloaded;	// null to load them from files
+		
+		CompositeTask(Map<Hazard, String> files, Map<Hazard, HazardGrid> preloaded)
+		{
+			this.files = files;
+			this.preloaded = preloaded;
+		}
+		
+		// Runs on a background thread
+		@Override
+		protected GridView doInBackground()
+		{
+			Map<Hazard, HazardGrid> loaded = preloaded != null ? preloaded : LoadAllHazards(files);
+			if (isCancelled())
+				return null;
+			
+			CompositeGrid combined = CombineHazards(loaded);
+			if (combined == null || isCancelled())
+				return null;
+			
+			return PrepareComposite(combined);
+		}
+		
+		// Runs on the AWT event thread
+		@Override
+		protected void done()
+		{
+			// A cancelled task has been replaced by a newer one
+			if (isCancelled())
+				return;
+			
+			compositeTask = null;
+			
+			try
+			{
+				GridView view = get();
+				if (view != null)
+				{
+					ShowComposite(view);
+				}
+			}
+			catch (InterruptedException | ExecutionException e)
+			{
+				System.err.println("ERROR!\t" + e.getMessage());
+				DebugPrintln("ERROR!\t" + e.getMessage());
+			}
+		}
+	}
+	
+	// Background task that loads and exports all hazards off the AWT event thread.
+	// Reports how many hazards are done on the Export button as it goes,
+	// and hands the loaded grids back to ExportFinished when done
+	class ExportTask extends SwingWorker<Map<Hazard, HazardGrid>, Integer>
+	{
+		// Number of hazards being exported, once known
+		private volatile int total = 0;
+		
+		// File of each hazard to load and export
+		private final Map<Hazard, String> files;
+		
+		// What went wrong with each hazard (or the worst case) that could not be loaded or exported, by name.
+		// Filled in the background, read in done() once get() has returned
+		private final Map<String, String> failed = new LinkedHashMap<String, String>();
+		
+		ExportTask(Map<Hazard, String> files)
+		{
+			this.files = files;
+		}
+		
+		// Runs on a background thread
+		@Override
+		protected Map<Hazard, HazardGrid> doInBackground() throws InterruptedException
+		{
+			final File dir = ExportDirectory();
+			
+			// Load all the hazard files at the same time
+			Map<Hazard, HazardGrid> loaded = LoadAllHazards(files, failed);
+			if (isCancelled())
+				return null;
+			
+			// Then export each hazard's grid on the loader threads
+			Map<String, Future<Void>> exports = new LinkedHashMap<String, Future<Void>>();
+			for (final Map.Entry<Hazard, HazardGrid> entry : loaded.entrySet())
+			{
+				exports.put(entry.getKey().toString(), loader.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						ExportHazard(entry.getKey(), entry.getValue(), dir, files.get(entry.getKey()));
+						return null;
+					}
+				}));
+			}
+			
+			// and the worst case of them all alongside
+			final Map<Hazard, HazardGrid> combined = loaded;
+			exports.put(HazardGridLoader.COMPOSITE, loader.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					ExportComposite(combined, dir, files.values().iterator().next());
+					return null;
+				}
+			}));
+			
+			// Wait for all exports to finish, reporting progress after each one
+			total = exports.size();
+			int finished = 0;
+			try
+			{
+				for (Map.Entry<String, Future<Void>> export : exports.entrySet())
+				{
+					try
+					{
+						export.getValue().get();
+					}
+					catch (ExecutionException e)
+					{
+						System.err.println("ERROR!\t" + export.getKey() + ": " + Describe(e.getCause()));
+						DebugPrintln("ERROR!\t" + export.getKey() + ": " + Describe(e.getCause()));
+						failed.put(export.getKey(), Describe(e.getCause()));
+					}
+					finished++;
+					publish(finished);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// Cancelled, stop any exports still running
+				for (Future<Void> export : exports.values())
+				{
+					export.cancel(true);
+				}
+				throw e;
+			}
+			
+			return loaded;
+		}
+		
+		// Runs on the AWT event thread with the hazard counts finished since the last call
+		@Override
+		protected void process(List<Integer> finished)
+		{
+			if (!isDone())
+			{
+				btnExport.setLabel("Exporting " + finished.get(finished.size() - 1) + "/" + total + " (cancel)");
+			}
+		}
+		
+		// Runs on the AWT event thread
+		@Override
+		protected void done()
+		{
+			Map<Hazard, HazardGrid> exported = null;
+			Throwable failure = null;
+			
+			if (!isCancelled())
+			{
+				try
+				{
+					exported = get();
+				}
+				catch (ExecutionException e)
+				{
+					failure = e.getCause() != null ? e.getCause() : e;
+					System.err.println("ERROR!\t" + failure);
+					DebugPrintln("ERROR!\t" + failure);
+				}
+				catch (InterruptedException e)
+				{
+					failure = e;
+					System.err.println("ERROR!\t" + e);
+					DebugPrintln("ERROR!\t" + e);
+				}
+			}
+			
+			ExportFinished(exported, failure, failed);
+		}
+	}
+	
 	// makes custom ImageComponent from Component
 	// taken directly from http://www.tutorialspoint.com/awt/awt_image.htm
 	class ImageComponent extends Component
@@ -0,0 +1,410 @@
+package iansindustrialinstallation;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Timings and counts of the hot paths: parsing, classifying, rendering, each export format and the grid cache.
+// Recording is a couple of LongAdder additions, which threads do not fight over, so it is always on.
+// Each timer keeps a histogram of its times, so slow runs show up in the percentiles and not just the mean.
+//
+// Everything is published through JMX (jconsole, VisualVM...) under iansindustrialinstallation:type=Metrics,
+// unless -Diii.metrics.jmx=false. With -Diii.metrics.file=<file> a report is also appended to that file
+// every -Diii.metrics.interval seconds (60 by default) and when the program ends.
+public final class Metrics
+{
+	public static final String DOMAIN = "iansindustrialinstallation";
+	
+	// Seconds between reports to the metrics file, can be set with -Diii.metrics.interval=<seconds>
+	public static final long DEFAULT_INTERVAL = 60;
+	
+	// Timers of the hot paths
+	static final Timer PARSE = new Timer("Parse");
+	static final Timer CLASSIFY = new Timer("Classify");
+	static final Timer COMBINE = new Timer("Combine");
+	static final Timer RENDER = new Timer("Render");
+	static final Timer EXPORT_RAF_DAT_RPT = new Timer("ExportRafDatRpt");
+	static final Timer EXPORT_CHANGED = new Timer("ExportChangedRows");
+	static final Timer EXPORT_SUM = new Timer("ExportSum");
+	static final Timer EXPORT_ZON = new Timer("ExportZon");
+	
+	private static final Timer[] TIMERS = { PARSE, CLASSIFY, COMBINE, RENDER, EXPORT_RAF_DAT_RPT, EXPORT_CHANGED, EXPORT_SUM, EXPORT_ZON };
+	
+	// Counters
+	static final LongAdder BYTES_READ = new LongAdder();
+	static final LongAdder CELLS_CLASSIFIED = new LongAdder();
+	static final LongAdder CACHE_HITS = new LongAdder();
+	static final LongAdder CACHE_MISSES = new LongAdder();
+	// classify() calls that reused cached bands, and those that had to classify the grid
+	static final LongAdder CLASSIFY_HITS = new LongAdder();
+	static final LongAdder CLASSIFY_MISSES = new LongAdder();
+	
+	private static boolean started = false;
+	
+	private Metrics()
+	{
+	}
+	
+	// What JMX shows of each timer (times in milliseconds)
+	public interface TimerMXBean
+	{
+		long getCount();
+		double getTotalMillis();
+		double getMeanMillis();
+		double getP50Millis();
+		double getP95Millis();
+		double getP99Millis();
+		double getMaxMillis();
+		void reset();
+	}
+	
+	// What JMX shows of the counters, and the whole report as text
+	public interface CountersMXBean
+	{
+		long getBytesRead();
+		long getCellsClassified();
+		double getCellsClassifiedPerSecond();
+		long getCacheHits();
+		long getCacheMisses();
+		double getCacheHitRate();
+		long getClassifyHits();
+		long getClassifyMisses();
+		double getClassifyHitRate();
+		String getReport();
+		void reset();
+	}
+	
+	// Publish the metrics through JMX and start writing the metrics file, as set by the -Diii.metrics.* properties.
+	// Only does anything the first time it is called
+	public static synchronized void startFromProperties()
+	{
+		if (started)
+			return;
+		started = true;
+		
+		if (!"false".equalsIgnoreCase(System.getProperty("iii.metrics.jmx")))
+		{
+			register();
+		}
+		
+		String file = System.getProperty("iii.metrics.file");
+		if (file != null)
+		{
+			startDumping(file, Math.max(1, Long.getLong("iii.metrics.interval", DEFAULT_INTERVAL)));
+		}
+	}
+	
+	// Register every timer and the counters with the platform MBean server
+	private static void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			
+			for (Timer timer : TIMERS)
+			{
+				server.registerMBean(timer, new ObjectName(DOMAIN + ":type=Metrics,name=" + timer.name()));
+			}
+			server.registerMBean(new Counters(), new ObjectName(DOMAIN + ":type=Metrics,name=Counters"));
+		}
+		catch (JMException | SecurityException e)
+		{
+			System.err.println("ERROR!\tUnable to publish metrics: " + e.getMessage());
+			DebugLog.error("ERROR!\tUnable to publish metrics: " + e.getMessage());
+		}
+	}
+	
+	// Append a report to the given file every so many seconds, and once more when the program ends
+	private static void startDumping(final String file, long seconds)
+	{
+		// Daemon thread, so it never keeps the program running
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "metrics-writer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		timer.scheduleAtFixedRate(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				dump(file);
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+		
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				dump(file);
+			}
+		}, "metrics-shutdown"));
+		
+		DebugLog.debug(() -> "Writing metrics to " + file + " every " + seconds + "s");
+	}
+	
+	// Append the current report to the given file, headed with the time
+	static void dump(String file)
+	{
+		String text = "[" + LocalDateTime.now() + "]" + System.lineSeparator() + report() + System.lineSeparator();
+		
+		try
+		{
+			Files.write(Paths.get(file), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+		catch (IOException e)
+		{
+			System.err.println("ERROR!\tUnable to write metrics to " + file + ": " + e.getMessage());
+			DebugLog.error("ERROR!\tUnable to write metrics to " + file + ": " + e.getMessage());
+		}
+	}
+	
+	// Every timer and counter as text, one timer per line
+	public static String report()
+	{
+		StringBuilder text = new StringBuilder();
+		
+		for (Timer timer : TIMERS)
+		{
+			text.append(String.format(Locale.ROOT, "%-18s count=%d total=%.1fms mean=%.3fms p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms",
+					timer.name(), timer.getCount(), timer.getTotalMillis(), timer.getMeanMillis(),
+					timer.getP50Millis(), timer.getP95Millis(), timer.getP99Millis(), timer.getMaxMillis()));
+			text.append(System.lineSeparator());
+		}
+		
+		text.append(String.format(Locale.ROOT, "Bytes read %d, cells classified %d (%.0f per second), cache hits %d of %d (%.1f%%), reused bands %d of %d (%.1f%%)",
+				BYTES_READ.sum(), CELLS_CLASSIFIED.sum(), cellsClassifiedPerSecond(),
+				CACHE_HITS.sum(), CACHE_HITS.sum() + CACHE_MISSES.sum(), cacheHitRate() * 100,
+				CLASSIFY_HITS.sum(), CLASSIFY_HITS.sum() + CLASSIFY_MISSES.sum(), classifyHitRate() * 100));
+		text.append(System.lineSeparator());
+		
+		return text.toString();
+	}
+	
+	// Zero every timer and counter (not atomic, anything recorded meanwhile may be half kept)
+	public static void reset()
+	{
+		for (Timer timer : TIMERS)
+		{
+			timer.reset();
+		}
+		BYTES_READ.reset();
+		CELLS_CLASSIFIED.reset();
+		CACHE_HITS.reset();
+		CACHE_MISSES.reset();
+		CLASSIFY_HITS.reset();
+		CLASSIFY_MISSES.reset();
+	}
+	
+	private static double cellsClassifiedPerSecond()
+	{
+		double seconds = CLASSIFY.getTotalMillis() / 1000;
+		return seconds > 0 ? CELLS_CLASSIFIED.sum() / seconds : 0;
+	}
+	
+	// Share of file loads served from the cache
+	private static double cacheHitRate()
+	{
+		return hitRate(CACHE_HITS.sum(), CACHE_MISSES.sum());
+	}
+	
+	// Share of classify() calls that reused cached bands
+	private static double classifyHitRate()
+	{
+		return hitRate(CLASSIFY_HITS.sum(), CLASSIFY_MISSES.sum());
+	}
+	
+	private static double hitRate(long hits, long misses)
+	{
+		long lookups = hits + misses;
+		return lookups > 0 ? (double) hits / lookups : 0;
+	}
+	
+	// Count and histogram of how long something took.
+	// Times under 4ns get a bucket each, and above that each power of two is split into 4 buckets,
+	// so percentiles are at most 25% above the real time (and never above the longest time)
+	public static final class Timer implements TimerMXBean
+	{
+		private static final int SUB_BITS = 2;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+		private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+		
+		private final String name;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final LongAdder[] buckets = new LongAdder[BUCKETS];
+		
+		Timer(String name)
+		{
+			this.name = name;
+			
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				buckets[i] = new LongAdder();
+			}
+		}
+		
+		public String name() { return name; }
+		
+		// Record the time since startNanos (from System.nanoTime())
+		public void record(long startNanos)
+		{
+			recordNanos(System.nanoTime() - startNanos);
+		}
+		
+		public void recordNanos(long nanos)
+		{
+			nanos = Math.max(0, nanos);
+			
+			count.increment();
+			totalNanos.add(nanos);
+			buckets[bucket(nanos)].increment();
+			
+			long max;
+			while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos))
+			{
+				// another thread raised the maximum meanwhile, check again
+			}
+		}
+		
+		@Override
+		public long getCount() { return count.sum(); }
+		
+		@Override
+		public double getTotalMillis() { return totalNanos.sum() / 1e6; }
+		
+		@Override
+		public double getMeanMillis()
+		{
+			long n = count.sum();
+			return n > 0 ? totalNanos.sum() / 1e6 / n : 0;
+		}
+		
+		@Override
+		public double getP50Millis() { return percentile(0.50) / 1e6; }
+		
+		@Override
+		public double getP95Millis() { return percentile(0.95) / 1e6; }
+		
+		@Override
+		public double getP99Millis() { return percentile(0.99) / 1e6; }
+		
+		@Override
+		public double getMaxMillis() { return maxNanos.get() / 1e6; }
+		
+		@Override
+		public void reset()
+		{
+			count.reset();
+			totalNanos.reset();
+			maxNanos.set(0);
+			for (LongAdder bucket : buckets)
+			{
+				bucket.reset();
+			}
+		}
+		
+		// Time (in nanoseconds) the given fraction of the recorded times are at or below, 0 if none
+		long percentile(double fraction)
+		{
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				counts[i] = buckets[i].sum();
+				total += counts[i];
+			}
+			if (total == 0)
+				return 0;
+			
+			long wanted = Math.max(1, (long) Math.ceil(fraction * total));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				seen += counts[i];
+				if (seen >= wanted)
+					return Math.min(upperBound(i), maxNanos.get());
+			}
+			return maxNanos.get();
+		}
+		
+		// Bucket of a time: its highest bit picks the power of two, the next SUB_BITS bits the bucket within it
+		static int bucket(long nanos)
+		{
+			if (nanos < SUB_BUCKETS)
+				return (int) nanos;
+			
+			int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+			return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + (int) ((nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+		}
+		
+		// Longest time that falls in a bucket
+		static long upperBound(int bucket)
+		{
+			if (bucket < SUB_BUCKETS)
+				return bucket;
+			
+			int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+			long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+			return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+		}
+	}
+	
+	private static final class Counters implements CountersMXBean
+	{
+		@Override
+		public long getBytesRead() { return BYTES_READ.sum(); }
+		
+		@Override
+		public long getCellsClassified() { return CELLS_CLASSIFIED.sum(); }
+		
+		@Override
+		public double getCellsClassifiedPerSecond() { return cellsClassifiedPerSecond(); }
+		
+		@Override
+		public long getCacheHits() { return CACHE_HITS.sum(); }
+		
+		@Override
+		public long getCacheMisses() { return CACHE_MISSES.sum(); }
+		
+		@Override
+		public double getCacheHitRate() { return cacheHitRate(); }
+		
+		@Override
+		public long getClassifyHits() { return CLASSIFY_HITS.sum(); }
+		
+		@Override
+		public long getClassifyMisses() { return CLASSIFY_MISSES.sum(); }
+		
+		@Override
+		public double getClassifyHitRate() { return classifyHitRate(); }
+		
+		@Override
+		public String getReport() { return report(); }
+		
+		@Override
+		public void reset() { Metrics.reset(); }
+	}
+}
@@ -0,0 +1,148 @@
+package iansindustrialinstallation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+// Binary .RAF export: a header followed by one byte per cell, so any cell can be
+// read or updated in place by seeking straight to it.
+//
+// Layout (big-endian, as written by DataOutputStream):
+//   4 bytes   magic "IIIR"
+//   short     format version (1)
+//   short     header length in bytes (offset of the first cell)
+//   int       width (cells per row)
+//   int       height (rows)
+//   long      timestamp of the export (milliseconds since 1970)
+//   UTF       hazard name (writeUTF: 2-byte length, then modified UTF-8)
+//   width * height bytes, row-major: band letter of each cell ('W', 'G', 'Y' or 'R')
+public final class RafFile implements Closeable
+{
+	public static final byte[] MAGIC = { 'I', 'I', 'I', 'R' };
+	public static final int VERSION = 1;
+	
+	// Offsets of the fixed header fields
+	private static final int TIMESTAMP_OFFSET = 16;
+	
+	private final RandomAccessFile file;
+	private final int headerLength;
+	private final int width;
+	private final int height;
+	private final String hazard;
+	
+	// Open an existing .RAF, read-only ("r") or for updates ("rw")
+	public RafFile(File path, String mode) throws IOException
+	{
+		file = new RandomAccessFile(path, mode);
+		
+		try
+		{
+			byte[] magic = new byte[MAGIC.length];
+			file.readFully(magic);
+			for (int i = 0; i < MAGIC.length; i++)
+			{
+				if (magic[i] != MAGIC[i])
+					throw new IOException(path + " is not a binary .RAF file");
+			}
+			
+			int version = file.readUnsignedShort();
+			if (version != VERSION)
+				throw new IOException(path + " has .RAF version " + version + ", expected " + VERSION);
+			
+			headerLength = file.readUnsignedShort();
+			width = file.readInt();
+			height = file.readInt();
+			file.readLong();	// timestamp, read on demand
+			hazard = file.readUTF();
+			
+			if (file.length() < headerLength + (long) width * height)
+				throw new IOException(path + " is shorter than its " + width + "x" + height + " cells");
+		}
+		catch (IOException e)
+		{
+			file.close();
+			throw e;
+		}
+	}
+	
+	// Write the header of a new .RAF; the caller writes width * height cell bytes after it
+	public static void writeHeader(OutputStream out, int width, int height, String hazard, long timestamp) throws IOException
+	{
+		// Build the variable-length part first, so the header length is known
+		ByteArrayOutputStream name = new ByteArrayOutputStream();
+		new DataOutputStream(name).writeUTF(hazard);
+		
+		DataOutputStream data = new DataOutputStream(out);
+		data.write(MAGIC);
+		data.writeShort(VERSION);
+		data.writeShort(TIMESTAMP_OFFSET + 8 + name.size());
+		data.writeInt(width);
+		data.writeInt(height);
+		data.writeLong(timestamp);
+		name.writeTo(data);
+		data.flush();
+	}
+	
+	// some getters for the header contents
+	public int width() { return width; }
+	public int height() { return height; }
+	public String hazard() { return hazard; }
+	
+	public long timestamp() throws IOException
+	{
+		file.seek(TIMESTAMP_OFFSET);
+		return file.readLong();
+	}
+	
+	public void setTimestamp(long timestamp) throws IOException
+	{
+		file.seek(TIMESTAMP_OFFSET);
+		file.writeLong(timestamp);
+	}
+	
+	// Band letter of the cell at x,y (both starting at 0)
+	public char read(int x, int y) throws IOException
+	{
+		file.seek(offset(x, y));
+		return (char) file.readUnsignedByte();
+	}
+	
+	// Change the band letter of the cell at x,y in place
+	public void write(int x, int y, char letter) throws IOException
+	{
+		file.seek(offset(x, y));
+		file.write(letter);
+	}
+	
+	// Read all band letters of row y into dst (at least width bytes)
+	public void readRow(int y, byte[] dst) throws IOException
+	{
+		file.seek(offset(0, y));
+		file.readFully(dst, 0, width);
+	}
+	
+	// Overwrite all band letters of row y from src (at least width bytes)
+	public void writeRow(int y, byte[] src) throws IOException
+	{
+		file.seek(offset(0, y));
+		file.write(src, 0, width);
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+	
+	private long offset(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			throw new IndexOutOfBoundsException("Cell " + x + "," + y + " is outside the " + width + "x" + height + " grid");
+		
+		return headerLength + (long) y * width + x;
+	}
+}
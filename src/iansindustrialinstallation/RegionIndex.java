@@ -0,0 +1,275 @@
+package iansindustrialinstallation;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+// Answers questions about any rectangle of a grid ("max CO in aisle 3", "mean SO2 in this bay")
+// without going over every cell in it. Built once per grid:
+//
+// - a summed-area table, where entry (x,y) is the total of every reading above and left of x,y,
+//   so the sum (and mean) of any rectangle takes four lookups
+//   https://en.wikipedia.org/wiki/Summed-area_table
+// - a pyramid of the highest and lowest reading of every 2x2, 4x4, 8x8... block of cells.
+//   A max or min query starts from the biggest blocks and only goes down to smaller ones
+//   along the edges of the rectangle, skipping any block that cannot beat the best found so far.
+//   This is not logarithmic: at worst it looks at a number of blocks in proportion to the
+//   rectangle's perimeter (width + height), not its area, and the skipping usually cuts that
+//   to a few blocks per level. A sparse table would answer in constant time, but needs
+//   log(width) * log(height) copies of the grid, too many for the big grids this is for
+//
+// The table uses ints when the readings are too small for any total to overflow, longs otherwise.
+// The readings are gone over a row at a time and never copied, so a sparse grid stays sparse.
+// Rectangles are in cells: x, y of the top-left cell, width and height, and are clipped to the grid.
+public final class RegionIndex
+{
+	private final HazardGrid grid;
+	private final int width;
+	private final int height;
+	
+	// Summed-area table, (width + 1) * (height + 1) entries with a row and column of zeros
+	// in front; only one of these is used
+	private final int[] intSums;
+	private final long[] longSums;
+	
+	// maxLevels.get(k) and minLevels.get(k) hold blocks of 2^k x 2^k cells
+	// (level 0 is the readings themselves, read from the grid, so it is left null)
+	private final List<int[]> maxLevels = new ArrayList<int[]>();
+	private final List<int[]> minLevels = new ArrayList<int[]>();
+	private final List<int[]> levelSizes = new ArrayList<int[]>();
+	
+	private RegionIndex(HazardGrid grid)
+	{
+		this.grid = grid;
+		width = grid.width();
+		height = grid.height();
+		
+		int[] row = new int[width];
+		long largest = 0;
+		for (int y = 0; y < height; y++)
+		{
+			grid.row(y, row, 0);
+			for (int v : row)
+			{
+				largest = Math.max(largest, Math.abs((long) v));
+			}
+		}
+		
+		// The biggest possible total decides whether ints are enough
+		if (largest * width * height < Integer.MAX_VALUE)
+		{
+			intSums = buildIntSums(row);
+			longSums = null;
+		}
+		else
+		{
+			intSums = null;
+			longSums = buildLongSums(row);
+		}
+		
+		buildPyramid();
+	}
+	
+	// Build the index of a grid
+	public static RegionIndex build(HazardGrid grid)
+	{
+		return new RegionIndex(grid);
+	}
+	
+	// Grid this index was built from
+	public HazardGrid grid() { return grid; }
+	
+	// Number of cells of the rectangle inside the grid
+	public long cells(Rectangle area)
+	{
+		Rectangle r = clip(area);
+		return r.isEmpty() ? 0 : (long) r.width * r.height;
+	}
+	
+	// Total of the readings in the rectangle
+	public long sum(Rectangle area)
+	{
+		Rectangle r = clip(area);
+		if (r.isEmpty())
+			return 0;
+		
+		int x0 = r.x;
+		int y0 = r.y;
+		int x1 = r.x + r.width;
+		int y1 = r.y + r.height;
+		int stride = width + 1;
+		
+		if (intSums != null)
+		{
+			return (long) intSums[y1 * stride + x1] - intSums[y0 * stride + x1] - intSums[y1 * stride + x0] + intSums[y0 * stride + x0];
+		}
+		return longSums[y1 * stride + x1] - longSums[y0 * stride + x1] - longSums[y1 * stride + x0] + longSums[y0 * stride + x0];
+	}
+	
+	// Mean reading in the rectangle (0 if it holds no cells)
+	public double mean(Rectangle area)
+	{
+		long cells = cells(area);
+		return cells == 0 ? 0 : (double) sum(area) / cells;
+	}
+	
+	// Highest reading in the rectangle (Integer.MIN_VALUE if it holds no cells)
+	public int max(Rectangle area)
+	{
+		Rectangle r = clip(area);
+		if (r.isEmpty())
+			return Integer.MIN_VALUE;
+		
+		return search(r, true, maxLevels.size() - 1, 0, 0, Integer.MIN_VALUE);
+	}
+	
+	// Lowest reading in the rectangle (Integer.MAX_VALUE if it holds no cells)
+	public int min(Rectangle area)
+	{
+		Rectangle r = clip(area);
+		if (r.isEmpty())
+			return Integer.MAX_VALUE;
+		
+		return search(r, false, minLevels.size() - 1, 0, 0, Integer.MAX_VALUE);
+	}
+	
+	private Rectangle clip(Rectangle area)
+	{
+		return area.intersection(new Rectangle(0, 0, width, height));
+	}
+	
+	// Both go over the grid a row at a time, using the given array for each row's readings
+	private int[] buildIntSums(int[] values)
+	{
+		int stride = width + 1;
+		int[] sums = new int[stride * (height + 1)];
+		for (int y = 0; y < height; y++)
+		{
+			grid.row(y, values, 0);
+			int row = 0;
+			for (int x = 0; x < width; x++)
+			{
+				row += values[x];
+				sums[(y + 1) * stride + x + 1] = sums[y * stride + x + 1] + row;
+			}
+		}
+		return sums;
+	}
+	
+	private long[] buildLongSums(int[] values)
+	{
+		int stride = width + 1;
+		long[] sums = new long[stride * (height + 1)];
+		for (int y = 0; y < height; y++)
+		{
+			grid.row(y, values, 0);
+			long row = 0;
+			for (int x = 0; x < width; x++)
+			{
+				row += values[x];
+				sums[(y + 1) * stride + x + 1] = sums[y * stride + x + 1] + row;
+			}
+		}
+		return sums;
+	}
+	
+	// Each level halves both sides of the one below (rounding up) until one block covers the grid
+	private void buildPyramid()
+	{
+		maxLevels.add(null);
+		minLevels.add(null);
+		levelSizes.add(new int[] { width, height });
+		
+		// The two rows of readings each block of level 1 is made from
+		int[] pair = new int[2 * width];
+		
+		int w = width;
+		int h = height;
+		while (w > 1 || h > 1)
+		{
+			boolean fromReadings = maxLevels.size() == 1;
+			int[] belowMax = fromReadings ? pair : maxLevels.get(maxLevels.size() - 1);
+			int[] belowMin = fromReadings ? pair : minLevels.get(minLevels.size() - 1);
+			int nw = (w + 1) / 2;
+			int nh = (h + 1) / 2;
+			int[] max = new int[nw * nh];
+			int[] min = new int[nw * nh];
+			
+			for (int y = 0; y < nh; y++)
+			{
+				int by = y * 2;
+				int by2 = Math.min(by + 1, h - 1);
+				int top = by * w;
+				int bottom = by2 * w;
+				
+				if (fromReadings)
+				{
+					grid.row(by, pair, 0);
+					grid.row(by2, pair, w);
+					top = 0;
+					bottom = w;
+				}
+				
+				for (int x = 0; x < nw; x++)
+				{
+					int bx = x * 2;
+					int bx2 = Math.min(bx + 1, w - 1);
+					max[y * nw + x] = Math.max(Math.max(belowMax[top + bx], belowMax[top + bx2]), Math.max(belowMax[bottom + bx], belowMax[bottom + bx2]));
+					min[y * nw + x] = Math.min(Math.min(belowMin[top + bx], belowMin[top + bx2]), Math.min(belowMin[bottom + bx], belowMin[bottom + bx2]));
+				}
+			}
+			
+			maxLevels.add(max);
+			minLevels.add(min);
+			levelSizes.add(new int[] { nw, nh });
+			w = nw;
+			h = nh;
+		}
+	}
+	
+	// Look in block bx,by of level k of the max (or min) pyramid, returning the better of best
+	// and anything found in it (higher for max, lower for min)
+	private int search(Rectangle r, boolean max, int k, int bx, int by, int best)
+	{
+		int size = 1 << k;
+		int x0 = bx * size;
+		int y0 = by * size;
+		int x1 = Math.min(x0 + size, width);
+		int y1 = Math.min(y0 + size, height);
+		
+		// Outside the rectangle
+		if (x1 <= r.x || y1 <= r.y || x0 >= r.x + r.width || y0 >= r.y + r.height)
+			return best;
+		
+		int value = blockValue(k, bx, by, max);
+		
+		// Nothing in this block can do better than what was already found
+		if (max ? value <= best : value >= best)
+			return best;
+		
+		// Wholly inside the rectangle, so its value counts as it is
+		if (k == 0 || (x0 >= r.x && y0 >= r.y && x1 <= r.x + r.width && y1 <= r.y + r.height))
+			return value;
+		
+		// Partly inside: look at the four smaller blocks it is made of
+		int[] below = levelSizes.get(k - 1);
+		for (int cy = by * 2; cy <= by * 2 + 1 && cy < below[1]; cy++)
+		{
+			for (int cx = bx * 2; cx <= bx * 2 + 1 && cx < below[0]; cx++)
+			{
+				best = search(r, max, k - 1, cx, cy, best);
+			}
+		}
+		return best;
+	}
+	
+	// Highest (or lowest) reading of block bx,by of level k
+	private int blockValue(int k, int bx, int by, boolean max)
+	{
+		if (k == 0)
+			return grid.get(bx, by);
+		
+		int levelWidth = levelSizes.get(k)[0];
+		return max ? maxLevels.get(k)[by * levelWidth + bx] : minLevels.get(k)[by * levelWidth + bx];
+	}
+}
@@ -0,0 +1,684 @@
+package iansindustrialinstallation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Append-only history of every sweep of one hazard, so past grids and the readings
+// of a cell over time can be looked up without keeping thousands of .csv copies.
+//
+// Two files are kept side by side:
+//
+// <name>.hist, the sweeps (big-endian):
+//   4 bytes   magic "IIIS"
+//   short     format version (1)
+//   int       width (cells per row)
+//   int       height (rows)
+//   int       keyframe interval
+//   then one frame per sweep, oldest first:
+//     int       length of the rest of the frame in bytes
+//     byte      0 for a keyframe, 1 for a delta frame
+//     long      timestamp of the sweep (milliseconds since 1970)
+//     3 strings address, date and time header lines (varint byte count, then UTF-8)
+//     keyframe: varint byte count of each row, then every row's readings as zigzag varints
+//     delta:    varint number of changed cells, then a column of index gaps (varints)
+//               followed by a column of reading changes (zigzag varints)
+//
+// <name>.hidx, the timestamp index, one 24 byte record per frame:
+//   long timestamp, long offset of the frame, long offset of the keyframe it builds on
+//
+// Most readings stay the same between sweeps, so delta frames are a few bytes each;
+// a keyframe every so often keeps the work of rebuilding any grid small.
+// A frame is only indexed once it has been written, so a crash leaves at most
+// a partly written frame at the end, which is cut off when the history is next opened.
+public final class SweepHistory implements Closeable
+{
+	public static final byte[] MAGIC = { 'I', 'I', 'I', 'S' };
+	public static final int VERSION = 1;
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 32;
+	
+	private static final int HEADER_LENGTH = 18;
+	private static final int INDEX_RECORD = 24;
+	private static final byte KEYFRAME = 0;
+	private static final byte DELTA = 1;
+	
+	// Read every sweep back right after adding it and check it matches, set with -Diii.history.verify=true
+	private static final boolean VERIFY = Boolean.getBoolean("iii.history.verify");
+	
+	private final File dataPath;
+	private final RandomAccessFile data;
+	private final RandomAccessFile index;
+	private final int keyframeInterval;
+	
+	// Size of the grids, 0 until the first sweep is added
+	private int width = 0;
+	private int height = 0;
+	
+	// Timestamp index, also kept in memory
+	private int count = 0;
+	private long[] times = new long[64];
+	private long[] offsets = new long[64];
+	private long[] keyOffsets = new long[64];
+	
+	// Newest sweep, which the next delta frame is worked out from
+	// (kept in whatever layout it came in, and compared a row at a time)
+	private HazardGrid latest = null;
+	private GridHeader latestHeader = null;
+	private int framesSinceKeyframe = 0;
+	
+	// Readings of one cell at a series of times, oldest first
+	public static final class CellSeries
+	{
+		private final long[] times;
+		private final int[] values;
+		private final int size;
+		
+		CellSeries(long[] times, int[] values, int size)
+		{
+			this.times = times;
+			this.values = values;
+			this.size = size;
+		}
+		
+		// some getters for the series contents
+		public int size() { return size; }
+		public long time(int i) { return times[i]; }
+		public int value(int i) { return values[i]; }
+	}
+	
+	// Open the history called name in dir, making new files if there is none yet
+	public SweepHistory(File dir, String name) throws IOException
+	{
+		this(dir, name, DEFAULT_KEYFRAME_INTERVAL);
+	}
+	
+	public SweepHistory(File dir, String name, int keyframeInterval) throws IOException
+	{
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Unable to create directory " + dir);
+		
+		dataPath = new File(dir, name + ".hist");
+		data = new RandomAccessFile(dataPath, "rw");
+		index = new RandomAccessFile(new File(dir, name + ".hidx"), "rw");
+		
+		try
+		{
+			if (data.length() == 0)
+			{
+				this.keyframeInterval = Math.max(1, keyframeInterval);
+				index.setLength(0);
+			}
+			else
+			{
+				this.keyframeInterval = readHeader();
+				recover();
+			}
+		}
+		catch (IOException e)
+		{
+			data.close();
+			index.close();
+			throw e;
+		}
+	}
+	
+	// some getters for the history contents
+	public synchronized int width() { return width; }
+	public synchronized int height() { return height; }
+	public synchronized int size() { return count; }
+	
+	// Timestamp of the newest sweep, or -1 if there are none
+	public synchronized long latestTime()
+	{
+		return count > 0 ? times[count - 1] : -1;
+	}
+	
+	// Add a sweep, timed by its header.
+	// Returns false if it is the same as the newest sweep already in the history,
+	// or if its header has no usable date and time (it could not be placed in the history).
+	// Sweeps must be added oldest first
+	public synchronized boolean append(HazardGrid grid) throws IOException
+	{
+		long time = grid.header().timestamp();
+		if (time < 0)
+		{
+			DebugLog.warn("Sweep of \"" + grid.header().date() + " " + grid.header().time() + "\" not added to " + dataPath.getName() + ", its date and time cannot be read");
+			return false;
+		}
+		
+		return append(grid, time);
+	}
+	
+	public synchronized boolean append(HazardGrid grid, long time) throws IOException
+	{
+		if (count == 0 && width == 0)
+		{
+			width = grid.width();
+			height = grid.height();
+			writeHeader();
+		}
+		else if (grid.width() != width || grid.height() != height)
+		{
+			throw new IOException(dataPath.getName() + " holds " + width + "x" + height + " grids, not " + grid.width() + "x" + grid.height());
+		}
+		
+		if (count > 0 && time < times[count - 1])
+			throw new IOException("Sweep of " + grid.header().date() + " " + grid.header().time() + " is older than the newest one in " + dataPath.getName());
+		
+		// Count the cells that changed since the newest sweep, a row of each at a time
+		int cells = width * height;
+		int[] row = new int[width];
+		int[] latestRow = new int[width];
+		int changed = 0;
+		if (latest != null)
+		{
+			for (int y = 0; y < height; y++)
+			{
+				grid.row(y, row, 0);
+				latest.row(y, latestRow, 0);
+				for (int x = 0; x < width; x++)
+				{
+					if (row[x] != latestRow[x])
+						changed++;
+				}
+			}
+			
+			// The same file seen again (at startup, or saved twice), whatever time it was given
+			if (changed == 0 && sameHeader(grid.header(), latestHeader))
+				return false;
+		}
+		
+		// Keyframe every so often, or when most of the grid changed anyway
+		boolean keyframe = latest == null || framesSinceKeyframe + 1 >= keyframeInterval || changed > cells / 2;
+		
+		// Build the frame in memory, then write it in one go
+		FrameWriter frame = new FrameWriter(64 + (keyframe ? cells : changed * 4));
+		frame.writeInt(0);	// length, filled in below
+		frame.write(keyframe ? KEYFRAME : DELTA);
+		frame.writeLong(time);
+		frame.writeString(grid.header().address());
+		frame.writeString(grid.header().date());
+		frame.writeString(grid.header().time());
+		
+		if (keyframe)
+		{
+			writeKeyframe(frame, grid, row);
+		}
+		else
+		{
+			writeDelta(frame, grid, changed, row, latestRow);
+		}
+		
+		byte[] bytes = frame.toByteArray();
+		ByteBuffer.wrap(bytes).putInt(0, bytes.length - 4);
+		
+		long offset = data.length();
+		data.seek(offset);
+		data.write(bytes);
+		
+		long keyOffset = keyframe ? offset : keyOffsets[count - 1];
+		index.seek((long) count * INDEX_RECORD);
+		index.writeLong(time);
+		index.writeLong(offset);
+		index.writeLong(keyOffset);
+		
+		addToIndex(time, offset, keyOffset);
+		latest = grid;
+		latestHeader = grid.header();
+		framesSinceKeyframe = keyframe ? 0 : framesSinceKeyframe + 1;
+		
+		if (VERIFY)
+		{
+			verify(grid, time);
+		}
+		
+		return true;
+	}
+	
+	// The grid as it was at the given time (the newest sweep taken at or before it),
+	// or null if the history starts after that time
+	public synchronized HazardGrid gridAt(long time) throws IOException
+	{
+		int last = lastAtOrBefore(time);
+		if (last < 0)
+			return null;
+		
+		int first = Arrays.binarySearch(offsets, 0, count, keyOffsets[last]);
+		int[] values = new int[width * height];
+		GridHeader header = null;
+		
+		// Start from the keyframe, then apply every delta up to the wanted sweep
+		for (int i = first; i <= last; i++)
+		{
+			FrameReader frame = readFrame(offsets[i]);
+			header = frame.header;
+			
+			if (frame.kind == KEYFRAME)
+			{
+				frame.skipVarints(height);	// row byte counts
+				for (int c = 0; c < values.length; c++)
+				{
+					values[c] = frame.readZigZag();
+				}
+			}
+			else
+			{
+				int changed = frame.readVarint();
+				int[] cells = new int[changed];
+				int cell = -1;
+				for (int c = 0; c < changed; c++)
+				{
+					cell += frame.readVarint() + 1;
+					cells[c] = cell;
+				}
+				for (int c = 0; c < changed; c++)
+				{
+					values[cells[c]] += frame.readZigZag();
+				}
+			}
+		}
+		
+		return HazardGrid.compact(header, width, height, values);
+	}
+	
+	// Readings of the cell at x,y in every sweep taken between from and to (inclusive)
+	public synchronized CellSeries cellHistory(int x, int y, long from, long to) throws IOException
+	{
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			throw new IndexOutOfBoundsException("Cell " + x + "," + y + " is outside the " + width + "x" + height + " grid");
+		
+		int first = lastAtOrBefore(from - 1) + 1;
+		int last = lastAtOrBefore(to);
+		int size = Math.max(0, last - first + 1);
+		long[] seriesTimes = new long[size];
+		int[] seriesValues = new int[size];
+		if (size == 0)
+			return new CellSeries(seriesTimes, seriesValues, 0);
+		
+		int target = y * width + x;
+		int value = 0;
+		
+		// Only the one cell is followed: keyframes are read from the start of its row,
+		// and delta frames only as far as the cell in each column
+		for (int i = Arrays.binarySearch(offsets, 0, count, keyOffsets[first]); i <= last; i++)
+		{
+			FrameReader frame = readFrame(offsets[i]);
+			
+			if (frame.kind == KEYFRAME)
+			{
+				int rowStart = 0;
+				for (int row = 0; row < height; row++)
+				{
+					int length = frame.readVarint();
+					if (row < y)
+						rowStart += length;
+				}
+				frame.skipBytes(rowStart);
+				frame.skipVarints(x);
+				value = frame.readZigZag();
+			}
+			else
+			{
+				int changed = frame.readVarint();
+				int cell = -1;
+				int position = -1;
+				for (int c = 0; c < changed; c++)
+				{
+					cell += frame.readVarint() + 1;
+					if (cell == target)
+						position = c;
+					if (cell >= target)
+					{
+						frame.skipVarints(changed - c - 1);
+						break;
+					}
+				}
+				if (position >= 0)
+				{
+					frame.skipVarints(position);
+					value += frame.readZigZag();
+				}
+			}
+			
+			if (i >= first)
+			{
+				seriesTimes[i - first] = times[i];
+				seriesValues[i - first] = value;
+			}
+		}
+		
+		return new CellSeries(seriesTimes, seriesValues, size);
+	}
+	
+	@Override
+	public synchronized void close() throws IOException
+	{
+		try
+		{
+			data.close();
+		}
+		finally
+		{
+			index.close();
+		}
+	}
+	
+	private void writeHeader() throws IOException
+	{
+		data.setLength(0);
+		data.write(MAGIC);
+		data.writeShort(VERSION);
+		data.writeInt(width);
+		data.writeInt(height);
+		data.writeInt(keyframeInterval);
+	}
+	
+	// Reads the file header, returning the keyframe interval
+	private int readHeader() throws IOException
+	{
+		data.seek(0);
+		byte[] magic = new byte[MAGIC.length];
+		data.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC))
+			throw new IOException(dataPath + " is not a sweep history file");
+		
+		int version = data.readUnsignedShort();
+		if (version != VERSION)
+			throw new IOException(dataPath + " has history version " + version + ", expected " + VERSION);
+		
+		width = data.readInt();
+		height = data.readInt();
+		return data.readInt();
+	}
+	
+	// Load the index, dropping records (and frames) that were not completely written,
+	// then rebuild the newest grid so deltas can be added to it
+	private void recover() throws IOException
+	{
+		long records = index.length() / INDEX_RECORD;
+		long end = HEADER_LENGTH;
+		
+		index.seek(0);
+		for (long r = 0; r < records; r++)
+		{
+			long time = index.readLong();
+			long offset = index.readLong();
+			long keyOffset = index.readLong();
+			
+			if (offset != end || offset + 4 > data.length())
+				break;
+			data.seek(offset);
+			long frameEnd = offset + 4 + data.readInt();
+			if (frameEnd > data.length())
+				break;
+			
+			addToIndex(time, offset, keyOffset);
+			end = frameEnd;
+		}
+		
+		if (index.length() != (long) count * INDEX_RECORD || data.length() != end)
+		{
+			DebugLog.warn("Cutting off an incomplete sweep at the end of " + dataPath.getName());
+			index.setLength((long) count * INDEX_RECORD);
+			data.setLength(end);
+		}
+		
+		if (count > 0)
+		{
+			latest = gridAt(times[count - 1]);
+			latestHeader = latest.header();
+			framesSinceKeyframe = count - 1 - Arrays.binarySearch(offsets, 0, count, keyOffsets[count - 1]);
+		}
+	}
+	
+	// Rebuild the sweep just added from its keyframe and deltas, and check it against the grid it came from
+	private void verify(HazardGrid grid, long time) throws IOException
+	{
+		HazardGrid back = gridAt(time);
+		int[] row = new int[width];
+		int[] backRow = new int[width];
+		
+		for (int y = 0; y < height; y++)
+		{
+			grid.row(y, row, 0);
+			back.row(y, backRow, 0);
+			if (!Arrays.equals(row, backRow) || !sameHeader(grid.header(), back.header()))
+				throw new IOException("Sweep of " + grid.header().date() + " " + grid.header().time() + " reads back differently from " + dataPath.getName() + " (row " + (y + 1) + ")");
+		}
+	}
+	
+	private void addToIndex(long time, long offset, long keyOffset)
+	{
+		if (count == times.length)
+		{
+			times = Arrays.copyOf(times, count * 2);
+			offsets = Arrays.copyOf(offsets, count * 2);
+			keyOffsets = Arrays.copyOf(keyOffsets, count * 2);
+		}
+		times[count] = time;
+		offsets[count] = offset;
+		keyOffsets[count] = keyOffset;
+		count++;
+	}
+	
+	// Index of the newest sweep taken at or before the given time, or -1 if none
+	private int lastAtOrBefore(long time)
+	{
+		int low = 0;
+		int high = count - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			if (times[mid] <= time)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		return high;
+	}
+	
+	// Both use the given arrays for the readings of each row
+	private void writeKeyframe(FrameWriter frame, HazardGrid grid, int[] row)
+	{
+		// Rows are written separately first, so their byte counts can go in front of them
+		FrameWriter rows = new FrameWriter(width * height + 16);
+		int[] rowLengths = new int[height];
+		for (int y = 0; y < height; y++)
+		{
+			int start = rows.size();
+			grid.row(y, row, 0);
+			for (int x = 0; x < width; x++)
+			{
+				rows.writeZigZag(row[x]);
+			}
+			rowLengths[y] = rows.size() - start;
+		}
+		
+		for (int length : rowLengths)
+		{
+			frame.writeVarint(length);
+		}
+		rows.writeTo(frame);
+	}
+	
+	private void writeDelta(FrameWriter frame, HazardGrid grid, int changed, int[] row, int[] latestRow)
+	{
+		frame.writeVarint(changed);
+		
+		int previous = -1;
+		for (int y = 0; y < height; y++)
+		{
+			grid.row(y, row, 0);
+			latest.row(y, latestRow, 0);
+			for (int x = 0; x < width; x++)
+			{
+				if (row[x] != latestRow[x])
+				{
+					int i = y * width + x;
+					frame.writeVarint(i - previous - 1);
+					previous = i;
+				}
+			}
+		}
+		
+		for (int y = 0; y < height; y++)
+		{
+			grid.row(y, row, 0);
+			latest.row(y, latestRow, 0);
+			for (int x = 0; x < width; x++)
+			{
+				if (row[x] != latestRow[x])
+					frame.writeZigZag(row[x] - latestRow[x]);
+			}
+		}
+	}
+	
+	private FrameReader readFrame(long offset) throws IOException
+	{
+		data.seek(offset);
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+		return new FrameReader(bytes);
+	}
+	
+	private static boolean sameHeader(GridHeader a, GridHeader b)
+	{
+		return a.address().equals(b.address()) && a.date().equals(b.date()) && a.time().equals(b.time());
+	}
+	
+	// Builds a frame: fixed-size fields, varints and zigzag varints
+	// https://developers.google.com/protocol-buffers/docs/encoding#varints
+	private static final class FrameWriter extends ByteArrayOutputStream
+	{
+		FrameWriter(int size)
+		{
+			super(size);
+		}
+		
+		void writeInt(int v)
+		{
+			write(v >>> 24);
+			write(v >>> 16);
+			write(v >>> 8);
+			write(v);
+		}
+		
+		void writeLong(long v)
+		{
+			writeInt((int) (v >>> 32));
+			writeInt((int) v);
+		}
+		
+		void writeVarint(int v)
+		{
+			while ((v & ~0x7F) != 0)
+			{
+				write((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			write(v);
+		}
+		
+		// Small negative and positive numbers both take few bytes
+		void writeZigZag(int v)
+		{
+			writeVarint((v << 1) ^ (v >> 31));
+		}
+		
+		void writeString(String s)
+		{
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			writeVarint(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+		
+		void writeTo(FrameWriter other)
+		{
+			other.write(buf, 0, count);
+		}
+	}
+	
+	// Reads a frame written by FrameWriter, starting after its length
+	private static final class FrameReader
+	{
+		private final byte[] bytes;
+		private int pos = 0;
+		
+		final byte kind;
+		final long time;
+		final GridHeader header;
+		
+		FrameReader(byte[] bytes) throws IOException
+		{
+			this.bytes = bytes;
+			kind = bytes[pos++];
+			time = ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+			header = new GridHeader(readString(), readString(), readString());
+		}
+		
+		private int readInt() throws IOException
+		{
+			check(4);
+			int v = ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16) | ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+			pos += 4;
+			return v;
+		}
+		
+		int readVarint() throws IOException
+		{
+			int v = 0;
+			for (int shift = 0; shift < 35; shift += 7)
+			{
+				check(1);
+				byte b = bytes[pos++];
+				v |= (b & 0x7F) << shift;
+				if (b >= 0)
+					return v;
+			}
+			throw new IOException("Malformed number in sweep history");
+		}
+		
+		int readZigZag() throws IOException
+		{
+			int v = readVarint();
+			return (v >>> 1) ^ -(v & 1);
+		}
+		
+		void skipVarints(int n) throws IOException
+		{
+			while (n > 0)
+			{
+				check(1);
+				if (bytes[pos++] >= 0)
+					n--;
+			}
+		}
+		
+		void skipBytes(int n) throws IOException
+		{
+			check(n);
+			pos += n;
+		}
+		
+		private String readString() throws IOException
+		{
+			int length = readVarint();
+			check(length);
+			String s = new String(bytes, pos, length, StandardCharsets.UTF_8);
+			pos += length;
+			return s;
+		}
+		
+		private void check(int n) throws IOException
+		{
+			if (n < 0 || pos + n > bytes.length)
+				throw new EOFException("Sweep history frame ends early");
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package iansindustrialinstallation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import iansindustrialinstallation.IansIndustrialInstallation.Hazard;
+
+// Watches a directory for new or updated sweep files (Ians_<sweep>_<hazard>.csv)
+// and loads each one in the background as soon as it has been written.
+// Sensors write a file in several goes, so a file is only loaded once it has been
+// quiet (no more changes) for a short time; a burst of writes gives one load.
+// https://docs.oracle.com/javase/tutorial/essential/io/notification.html
+public final class SweepWatcher implements Closeable
+{
+	// Default quiet time, can be set with -Diii.watch.quiet=<milliseconds>
+	public static final long DEFAULT_QUIET_MILLIS = 200;
+	
+	// Told about every sweep file loaded (called on a loader thread)
+	public interface Listener
+	{
+		void sweepLoaded(Hazard hazard, String fileName, HazardGrid grid);
+	}
+	
+	private final Path dir;
+	private final HazardGridLoader loader;
+	private final long quietMillis;
+	private final Listener listener;
+	
+	private final WatchService watchService;
+	private final ScheduledExecutorService timer;
+	private final Thread thread;
+	
+	// Files changed recently, waiting for their quiet time to run out
+	private final Map<Path, ScheduledFuture<?>> pending = new HashMap<Path, ScheduledFuture<?>>();
+	
+	// Set once closed, so loads already under way are not handed to the listener
+	private volatile boolean closed = false;
+	
+	public SweepWatcher(Path dir, HazardGridLoader loader, long quietMillis, Listener listener) throws IOException
+	{
+		this.dir = dir;
+		this.loader = loader;
+		this.quietMillis = quietMillis;
+		this.listener = listener;
+		
+		watchService = FileSystems.getDefault().newWatchService();
+		dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "sweep-watcher-timer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				watch();
+			}
+		}, "sweep-watcher");
+		thread.setDaemon(true);
+	}
+	
+	// Watcher with the quiet time from -Diii.watch.quiet, or the default
+	public static SweepWatcher fromProperties(Path dir, HazardGridLoader loader, Listener listener) throws IOException
+	{
+		return new SweepWatcher(dir, loader, Long.getLong("iii.watch.quiet", DEFAULT_QUIET_MILLIS), listener);
+	}
+	
+	public void start()
+	{
+		thread.start();
+		DebugLog.info("Watching " + dir.toAbsolutePath().normalize() + " for new sweep files...");
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		closed = true;
+		watchService.close();
+		timer.shutdownNow();
+	}
+	
+	private void watch()
+	{
+		try
+		{
+			while (true)
+			{
+				WatchKey key = watchService.take();
+				
+				for (WatchEvent<?> event : key.pollEvents())
+				{
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+					{
+						// Some events were lost, so look at every sweep file again
+						DebugLog.warn("Too many file changes in " + dir + " at once, checking all sweep files");
+						changedAll();
+					}
+					else
+					{
+						changed(dir.resolve((Path) event.context()));
+					}
+				}
+				
+				if (!key.reset())
+				{
+					DebugLog.error("ERROR!\tNo longer able to watch " + dir);
+					return;
+				}
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e)
+		{
+			// Closed, stop watching
+		}
+	}
+	
+	private void changedAll()
+	{
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.csv"))
+		{
+			for (Path file : files)
+			{
+				changed(file);
+			}
+		}
+		catch (IOException e)
+		{
+			DebugLog.error("ERROR!\t" + dir + ": " + e.getMessage());
+		}
+	}
+	
+	// A file was created or written to: (re)start its quiet time
+	private void changed(final Path file)
+	{
+		final Hazard hazard = HazardGridLoader.hazardOfFile(file.getFileName().toString());
+		if (hazard == null)
+			return;
+		
+		synchronized (pending)
+		{
+			ScheduledFuture<?> waiting = pending.get(file);
+			if (waiting != null)
+			{
+				waiting.cancel(false);
+			}
+			
+			pending.put(file, timer.schedule(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					synchronized (pending)
+					{
+						pending.remove(file);
+					}
+					load(hazard, file);
+				}
+			}, quietMillis, TimeUnit.MILLISECONDS));
+		}
+	}
+	
+	// Quiet time is over: parse the file on a loader thread and hand it to the listener
+	private void load(final Hazard hazard, final Path file)
+	{
+		final String fileName = file.normalize().toString();
+		
+		loader.submit(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				// The file changed, whatever its size and time say
+				if (loader.cache() != null)
+				{
+					loader.cache().invalidate(fileName);
+				}
+				
+				HazardGrid grid;
+				try
+				{
+					grid = loader.read(fileName);
+				}
+				catch (IOException e)
+				{
+					// Most likely still being written, its next change loads it again
+					DebugLog.warn("Could not load new sweep " + fileName + ": " + e.getMessage());
+					return null;
+				}
+				
+				if (closed)
+					return null;
+				
+				DebugLog.info("New " + hazard + " sweep loaded from " + fileName);
+				listener.sweepLoaded(hazard, fileName, grid);
+				return null;
+			}
+		});
+	}
+}